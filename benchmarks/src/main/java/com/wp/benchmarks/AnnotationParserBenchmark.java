@@ -0,0 +1,47 @@
+package com.wp.benchmarks;
+
+import com.wp.common.AnnotationParser;
+import com.wp.common.ColumnInfo;
+import com.wp.common.EntityPlan;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AnnotationParser 缓存查找的基准测试，使用多线程以暴露读取时的竞争
+ * @author 翁鹏
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class AnnotationParserBenchmark {
+
+    @Benchmark
+    public String getTableName() {
+        return AnnotationParser.getTableName(BenchUser.class);
+    }
+
+    @Benchmark
+    public List<ColumnInfo> getColumnsInfo() {
+        return AnnotationParser.getColumnsInfo(BenchUser.class);
+    }
+
+    @Benchmark
+    public EntityPlan getEntityPlan() {
+        return AnnotationParser.getEntityPlan(BenchUser.class);
+    }
+}
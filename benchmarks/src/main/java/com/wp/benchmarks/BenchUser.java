@@ -0,0 +1,18 @@
+package com.wp.benchmarks;
+
+import com.wp.annotation.TableName;
+
+/**
+ * 基准测试使用的实体
+ * @author 翁鹏
+ */
+@TableName("bench_user")
+public class BenchUser {
+
+    Long id;
+    String name;
+    String email;
+    Integer age;
+    Double score;
+    Integer isDelete;
+}
@@ -0,0 +1,118 @@
+package com.wp.benchmarks;
+
+import com.wp.common.AnnotationParser;
+import com.wp.common.DbTemplate;
+import com.wp.utils.DbUtil;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DbTemplate 增删改查的端到端基准测试，数据库为 H2 内存数据库（MySQL 模式）
+ * @author 翁鹏
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class DbTemplateBenchmark {
+
+    /**
+     * 表中预先写入的行数
+     */
+    @Param({"1000"})
+    private int rows;
+
+    private JdbcConnectionPool pool;
+
+    private DbTemplate dbTemplate;
+
+    /**
+     * save 使用的自增id，从预置数据之后开始
+     */
+    private AtomicLong nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        pool = H2Database.create("template", rows);
+        DbUtil.setDataSource(pool);
+        AnnotationParser.warmUp(BenchUser.class);
+        dbTemplate = new DbTemplate();
+        nextId = new AtomicLong(rows * 1000L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.dispose();
+    }
+
+    @Benchmark
+    public int save() throws SQLException {
+        return dbTemplate.save(H2Database.user(nextId.incrementAndGet()));
+    }
+
+    @Benchmark
+    public int update() throws SQLException {
+        BenchUser user = new BenchUser();
+        user.id = randomId();
+        user.name = "updated";
+        return dbTemplate.update(user);
+    }
+
+    @Benchmark
+    public int delete(DeleteState state) throws SQLException {
+        return dbTemplate.delete(state.user);
+    }
+
+    @Benchmark
+    public BenchUser selectById() throws SQLException {
+        return dbTemplate.selectById(BenchUser.class, randomId());
+    }
+
+    @Benchmark
+    public List<BenchUser> selectAll() throws SQLException {
+        return dbTemplate.selectAll(BenchUser.class);
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, rows + 1);
+    }
+
+    /**
+     * delete 每次调用前先写入一行待删除的数据
+     */
+    @State(Scope.Thread)
+    public static class DeleteState {
+
+        private static final AtomicLong NEXT_ID = new AtomicLong(Long.MAX_VALUE / 2);
+
+        private BenchUser user;
+
+        @Setup(Level.Invocation)
+        public void insert(DbTemplateBenchmark benchmark) throws SQLException {
+            long id = NEXT_ID.incrementAndGet();
+            H2Database.insert(benchmark.pool, id, 1);
+            user = new BenchUser();
+            user.id = id;
+        }
+    }
+}
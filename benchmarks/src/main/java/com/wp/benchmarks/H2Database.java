@@ -0,0 +1,68 @@
+package com.wp.benchmarks;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 基准测试使用的 H2 内存数据库（MySQL 模式）
+ * @author 翁鹏
+ */
+final class H2Database {
+
+    private H2Database() {
+    }
+
+    /**
+     * 创建内存数据库连接池，建表并写入 rows 条数据
+     */
+    static JdbcConnectionPool create(String name, int rows) throws SQLException {
+        JdbcConnectionPool pool = JdbcConnectionPool.create(
+                "jdbc:h2:mem:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists bench_user");
+            statement.execute("create table bench_user(id bigint primary key, name varchar(64), email varchar(128),"
+                    + " age int, score double, is_delete int)");
+        }
+        insert(pool, 1, rows);
+        return pool;
+    }
+
+    /**
+     * 使用原生JDBC写入 [from, from + count) 的数据
+     */
+    static void insert(JdbcConnectionPool pool, long from, int count) throws SQLException {
+        try (Connection connection = pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "insert into bench_user(id, name, email, age, score, is_delete) values(?,?,?,?,?,?)")) {
+            for (long id = from; id < from + count; id++) {
+                BenchUser user = user(id);
+                statement.setLong(1, user.id);
+                statement.setString(2, user.name);
+                statement.setString(3, user.email);
+                statement.setInt(4, user.age);
+                statement.setDouble(5, user.score);
+                statement.setInt(6, user.isDelete);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * 构造测试数据
+     */
+    static BenchUser user(long id) {
+        BenchUser user = new BenchUser();
+        user.id = id;
+        user.name = "user" + id;
+        user.email = "user" + id + "@example.com";
+        user.age = (int) (id % 80);
+        user.score = id * 0.5;
+        user.isDelete = 0;
+        return user;
+    }
+}
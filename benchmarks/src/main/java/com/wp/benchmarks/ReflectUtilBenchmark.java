@@ -0,0 +1,74 @@
+package com.wp.benchmarks;
+
+import com.wp.common.AnnotationParser;
+import com.wp.common.FieldAccessor;
+import com.wp.utils.ReflectUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReflectUtil 字段访问的基准测试，reflectGet 为每次调用都查找字段的原始反射写法，作为对照
+ * @author 翁鹏
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class ReflectUtilBenchmark {
+
+    private BenchUser user;
+
+    private FieldAccessor nameAccessor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        user = H2Database.user(1);
+        nameAccessor = AnnotationParser.getEntityPlan(BenchUser.class).getColumnByField("name").getAccessor();
+    }
+
+    @Benchmark
+    public Object getFieldValue() {
+        return ReflectUtil.getFieldValue(user, "name");
+    }
+
+    @Benchmark
+    public void setFieldValueByColumn() {
+        ReflectUtil.setFieldValueByColumn(user, "name", "benchmark");
+    }
+
+    @Benchmark
+    public Object accessorGet() {
+        return nameAccessor.get(user);
+    }
+
+    @Benchmark
+    public void accessorSet() {
+        nameAccessor.set(user, "benchmark");
+    }
+
+    @Benchmark
+    public Object newInstance() {
+        return ReflectUtil.newInstance(BenchUser.class);
+    }
+
+    @Benchmark
+    public Object reflectGet() throws Exception {
+        Field field = BenchUser.class.getDeclaredField("name");
+        field.setAccessible(true);
+        return field.get(user);
+    }
+}
@@ -0,0 +1,63 @@
+package com.wp.benchmarks;
+
+import com.wp.utils.DbUtil;
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DbUtil.resultSetToList 的映射开销基准测试
+ * 使用内存中的 SimpleResultSet 代替真实驱动，只测量映射本身的耗时
+ * @author 翁鹏
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class ResultSetMappingBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int rows;
+
+    private SimpleResultSet resultSet;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        resultSet = new SimpleResultSet();
+        // 关闭自动关闭，才能通过 beforeFirst 重复读取
+        resultSet.setAutoClose(false);
+        resultSet.addColumn("id", Types.BIGINT, 19, 0);
+        resultSet.addColumn("name", Types.VARCHAR, 64, 0);
+        resultSet.addColumn("email", Types.VARCHAR, 128, 0);
+        resultSet.addColumn("age", Types.INTEGER, 10, 0);
+        resultSet.addColumn("score", Types.DOUBLE, 17, 0);
+        resultSet.addColumn("is_delete", Types.INTEGER, 10, 0);
+        for (long id = 1; id <= rows; id++) {
+            BenchUser user = H2Database.user(id);
+            resultSet.addRow(user.id, user.name, user.email, user.age, user.score, user.isDelete);
+        }
+    }
+
+    @Benchmark
+    public List<BenchUser> resultSetToList() throws SQLException {
+        resultSet.beforeFirst();
+        return DbUtil.resultSetToList(BenchUser.class, resultSet);
+    }
+}
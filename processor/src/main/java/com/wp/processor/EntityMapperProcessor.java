@@ -0,0 +1,318 @@
+package com.wp.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 实体映射器注解处理器
+ * 为标注了 @TableName 或含有 @Column 字段的实体类生成 实体类名_EntityMapper，
+ * 生成的代码直接 new 对象、直接读写字段（私有字段通过 getter/setter），运行时由 AnnotationParser 自动加载
+ * @author 翁鹏
+ */
+@SupportedAnnotationTypes({"com.wp.annotation.TableName", "com.wp.annotation.Column"})
+public class EntityMapperProcessor extends AbstractProcessor {
+
+    private static final String TABLE_NAME = "com.wp.annotation.TableName";
+
+    private static final String COLUMN = "com.wp.annotation.Column";
+
+    private static final String ENTITY_MAPPER = "com.wp.common.EntityMapper";
+
+    private static final String SUFFIX = "_EntityMapper";
+
+    private static final String LOMBOK_DATA = "lombok.Data";
+
+    private static final String LOMBOK_GETTER = "lombok.Getter";
+
+    private static final String LOMBOK_SETTER = "lombok.Setter";
+
+    /**
+     * 已生成的实体类，避免多轮处理重复生成
+     */
+    private final Set<String> generated = new LinkedHashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> entities = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            String name = annotation.getQualifiedName().toString();
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (TABLE_NAME.equals(name) && element.getKind() == ElementKind.CLASS) {
+                    entities.add((TypeElement) element);
+                } else if (COLUMN.equals(name) && element.getKind() == ElementKind.FIELD) {
+                    entities.add((TypeElement) element.getEnclosingElement());
+                }
+            }
+        }
+        for (TypeElement entity : entities) {
+            if (generated.add(entity.getQualifiedName().toString())) {
+                generate(entity);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 生成实体映射器，实体类无法被生成的代码访问时跳过，运行时退回到反射
+     */
+    private void generate(TypeElement entity) {
+        String reason = checkEntity(entity);
+        if (reason != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                    "跳过生成 " + entity.getQualifiedName() + SUFFIX + "：" + reason, entity);
+            return;
+        }
+        Set<String> lombok = annotationNames(entity);
+        boolean lombokGetter = lombok.contains(LOMBOK_DATA) || lombok.contains(LOMBOK_GETTER);
+        boolean lombokSetter = lombok.contains(LOMBOK_DATA) || lombok.contains(LOMBOK_SETTER);
+        List<FieldAccess> fields = new ArrayList<>();
+        for (Element element : entity.getEnclosedElements()) {
+            if (element.getKind() != ElementKind.FIELD || element.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            FieldAccess field = FieldAccess.of((VariableElement) element, entity, lombokGetter, lombokSetter, processingEnv);
+            if (field == null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                        "跳过生成 " + entity.getQualifiedName() + SUFFIX + "：私有字段 " + element.getSimpleName() + " 没有 getter/setter", entity);
+                return;
+            }
+            fields.add(field);
+        }
+
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(entity);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String entityName = entity.getQualifiedName().toString();
+        String simpleName = (packageName.isEmpty() ? entityName : entityName.substring(packageName.length() + 1))
+                .replace('.', '_') + SUFFIX;
+        String mapperName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+
+        StringBuilder code = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            code.append("package ").append(packageName).append(";\n\n");
+        }
+        code.append("/**\n * 由 SimpleORM 注解处理器生成，请勿修改\n */\n");
+        code.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        code.append("public final class ").append(simpleName)
+                .append(" implements ").append(ENTITY_MAPPER).append("<").append(entityName).append("> {\n\n");
+
+        // 字段名
+        code.append("    private static final String[] FIELD_NAMES = {");
+        for (int i = 0; i < fields.size(); i++) {
+            code.append(i == 0 ? "" : ", ").append('"').append(fields.get(i).name).append('"');
+        }
+        code.append("};\n\n");
+
+        code.append("    @Override\n    public ").append(entityName).append(" newInstance() {\n")
+                .append("        return new ").append(entityName).append("();\n    }\n\n");
+
+        code.append("    @Override\n    public String[] fieldNames() {\n")
+                .append("        return FIELD_NAMES.clone();\n    }\n\n");
+
+        code.append("    @Override\n    public Object[] readValues(").append(entityName).append(" entity) {\n")
+                .append("        return new Object[]{");
+        for (int i = 0; i < fields.size(); i++) {
+            code.append(i == 0 ? "" : ", ").append(fields.get(i).read("entity"));
+        }
+        code.append("};\n    }\n\n");
+
+        code.append("    @Override\n    public Object get(").append(entityName).append(" entity, int index) {\n")
+                .append("        switch (index) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            code.append("            case ").append(i).append(":\n")
+                    .append("                return ").append(fields.get(i).read("entity")).append(";\n");
+        }
+        code.append("            default:\n")
+                .append("                throw new IndexOutOfBoundsException(String.valueOf(index));\n")
+                .append("        }\n    }\n\n");
+
+        code.append("    @Override\n    public void set(").append(entityName).append(" entity, int index, Object value) {\n")
+                .append("        switch (index) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            FieldAccess field = fields.get(i);
+            code.append("            case ").append(i).append(":\n");
+            if (field.primitive) {
+                code.append("                if (value != null) {\n")
+                        .append("                    ").append(field.write("entity", "value")).append(";\n")
+                        .append("                }\n");
+            } else {
+                code.append("                ").append(field.write("entity", "value")).append(";\n");
+            }
+            code.append("                return;\n");
+        }
+        code.append("            default:\n")
+                .append("                throw new IndexOutOfBoundsException(String.valueOf(index));\n")
+                .append("        }\n    }\n}\n");
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(mapperName, entity);
+            try (Writer writer = file.openWriter()) {
+                writer.write(code.toString());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "生成 " + mapperName + " 失败：" + e.getMessage(), entity);
+        }
+    }
+
+    /**
+     * 检查生成的代码能否访问实体类，不能时返回原因
+     */
+    private String checkEntity(TypeElement entity) {
+        if (entity.getModifiers().contains(Modifier.ABSTRACT)) {
+            return "抽象类";
+        }
+        for (Element element = entity; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return "私有类";
+            }
+            if (((TypeElement) element).getNestingKind() == NestingKind.MEMBER
+                    && !element.getModifiers().contains(Modifier.STATIC)) {
+                return "非静态内部类";
+            }
+            if (((TypeElement) element).getNestingKind() == NestingKind.LOCAL
+                    || ((TypeElement) element).getNestingKind() == NestingKind.ANONYMOUS) {
+                return "局部类或匿名类";
+            }
+        }
+        boolean hasConstructor = false;
+        for (Element element : entity.getEnclosedElements()) {
+            if (element.getKind() == ElementKind.CONSTRUCTOR) {
+                hasConstructor = true;
+                ExecutableElement constructor = (ExecutableElement) element;
+                if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                    return null;
+                }
+            }
+        }
+        // 没有声明构造方法时有默认的无参构造方法
+        return hasConstructor ? "没有非私有的无参构造方法" : null;
+    }
+
+    /**
+     * 获取元素上的注解类型名，用于判断是否使用 Lombok 生成 getter/setter
+     */
+    private static Set<String> annotationNames(Element element) {
+        Set<String> names = new LinkedHashSet<>();
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            names.add(mirror.getAnnotationType().toString());
+        }
+        return names;
+    }
+
+    /**
+     * 字段的读写方式
+     */
+    private static final class FieldAccess {
+
+        private final String name;
+
+        /**
+         * 设值时强制转换的类型（基本类型使用包装类型）
+         */
+        private final String castType;
+
+        private final boolean primitive;
+
+        /**
+         * getter/setter 方法名，直接访问字段时为null
+         */
+        private final String getter;
+
+        private final String setter;
+
+        private FieldAccess(String name, String castType, boolean primitive, String getter, String setter) {
+            this.name = name;
+            this.castType = castType;
+            this.primitive = primitive;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        /**
+         * 私有字段使用 getter/setter，方法由 Lombok（类上的 @Data、@Getter、@Setter 或字段上的 @Getter、@Setter）
+         * 生成或在类中声明，都没有时返回null
+         */
+        static FieldAccess of(VariableElement field, TypeElement entity, boolean lombokGetter, boolean lombokSetter,
+                              ProcessingEnvironment env) {
+            String name = field.getSimpleName().toString();
+            TypeMirror type = field.asType();
+            boolean primitive = type.getKind().isPrimitive();
+            String castType = primitive
+                    ? env.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString()
+                    : env.getTypeUtils().erasure(type).toString();
+            if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+                return new FieldAccess(name, castType, primitive, null, null);
+            }
+            boolean bool = type.getKind() == TypeKind.BOOLEAN;
+            // Lombok 对 boolean 类型的 isXxx 字段生成 isXxx() / setXxx()
+            String property = bool && isPrefixed(name) ? name.substring(2) : name;
+            String capitalized = Character.toUpperCase(property.charAt(0)) + property.substring(1);
+            String getter = (bool ? "is" : "get") + capitalized;
+            String setter = "set" + capitalized;
+            Set<String> annotations = annotationNames(field);
+            boolean hasGetter = lombokGetter || annotations.contains(LOMBOK_GETTER) || hasMethod(entity, getter, 0);
+            boolean hasSetter = !field.getModifiers().contains(Modifier.FINAL)
+                    && (lombokSetter || annotations.contains(LOMBOK_SETTER) || hasMethod(entity, setter, 1));
+            if (hasGetter && hasSetter) {
+                return new FieldAccess(name, castType, primitive, getter, setter);
+            }
+            return null;
+        }
+
+        /**
+         * 判断字段名是否为 is 加大写字母开头，例如 isActive
+         */
+        private static boolean isPrefixed(String name) {
+            return name.length() > 2 && name.startsWith("is") && Character.isUpperCase(name.charAt(2));
+        }
+
+        private static boolean hasMethod(TypeElement entity, String methodName, int parameters) {
+            for (Element element : entity.getEnclosedElements()) {
+                if (element.getKind() == ElementKind.METHOD
+                        && element.getSimpleName().contentEquals(methodName)
+                        && ((ExecutableElement) element).getParameters().size() == parameters
+                        && !element.getModifiers().contains(Modifier.PRIVATE)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String read(String target) {
+            return getter == null ? target + "." + name : target + "." + getter + "()";
+        }
+
+        String write(String target, String value) {
+            String cast = "(" + castType + ") " + value;
+            return setter == null ? target + "." + name + " = " + cast : target + "." + setter + "(" + cast + ")";
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.wp.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @author 翁鹏
+ * 二级缓存注解，标注在实体类上时 selectById 的结果会被缓存
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cacheable {
+    /**
+     * 最多缓存的对象数量
+     */
+    int maxSize() default 1000;
+
+    /**
+     * 缓存过期时间，单位为秒，小于等于0表示不过期
+     */
+    long ttlSeconds() default 300;
+}
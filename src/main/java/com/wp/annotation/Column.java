@@ -1,5 +1,7 @@
 package com.wp.annotation;
 
+import com.wp.type.TypeHandler;
+
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -21,4 +23,17 @@ public @interface Column {
      * 是否为主键
      */
     boolean isPrimaryKey() default false;
+
+    /**
+     * 是否延迟加载，延迟加载的字段不在查询所有字段的sql中，通过 DbTemplate.fetchLazy 加载
+     * 字段类型为 Lazy 时总是延迟加载，并且在第一次访问时自动查询
+     */
+    boolean lazy() default false;
+
+    /**
+     * 字段的类型处理器，默认按字段类型从 TypeHandlers 中查找
+     * 泛型类的类字面量（例如 EnumTypeHandler.class）只能是原始类型，无法赋给 Class&lt;? extends TypeHandler&lt;?&gt;&gt;，因此使用原始类型
+     */
+    @SuppressWarnings("rawtypes")
+    Class<? extends TypeHandler> typeHandler() default TypeHandler.class;
 }
@@ -0,0 +1,25 @@
+package com.wp.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @author 翁鹏
+ * 多对一关联注解，标注在关联对象字段上，例如订单中的 User user
+ * 该字段不是表字段，通过 DbTemplate.fetch 批量加载
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ManyToOne {
+    /**
+     * 本类中保存外键的类字段名，例如 userId
+     */
+    String joinField();
+
+    /**
+     * 关联类中被外键引用的类字段名，为空时使用关联类的主键
+     */
+    String referencedField() default "";
+}
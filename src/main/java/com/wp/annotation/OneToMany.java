@@ -0,0 +1,30 @@
+package com.wp.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @author 翁鹏
+ * 一对多关联注解，标注在 List 或 Set 类型的字段上，例如用户中的 List&lt;Order&gt; orders
+ * 该字段不是表字段，通过 DbTemplate.fetch 批量加载
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OneToMany {
+    /**
+     * 关联类中保存外键的类字段名，例如 userId
+     */
+    String mappedBy();
+
+    /**
+     * 本类中被外键引用的类字段名，为空时使用本类的主键
+     */
+    String referencedField() default "";
+
+    /**
+     * 关联类，为 void.class 时从字段的泛型参数中获取
+     */
+    Class<?> targetEntity() default void.class;
+}
@@ -0,0 +1,31 @@
+package com.wp.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @author 翁鹏
+ * 号段主键注解，标注在单一数值主键的实体类上时，保存主键为空的对象前从 orm_sequence 表预先分配主键
+ * 每次分配一个号段，号段内的主键在内存中发放，批量保存时主键已知，可以直接批处理
+ * 需要先创建表：create table orm_sequence(name varchar(64) primary key, next_value bigint not null)
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SequenceBlock {
+    /**
+     * 序列名，为空时使用表名
+     */
+    String value() default "";
+
+    /**
+     * 每次分配的号段大小
+     */
+    int blockSize() default 100;
+
+    /**
+     * 序列不存在时的起始值
+     */
+    long initialValue() default 1;
+}
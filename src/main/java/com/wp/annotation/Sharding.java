@@ -0,0 +1,53 @@
+package com.wp.annotation;
+
+import com.wp.sharding.ShardFunction;
+import com.wp.sharding.ShardStrategy;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @author 翁鹏
+ * 分片注解，标注在实体类上时按分片键把数据分散到多个物理表（表名 + 后缀，例如 user_07）和多个数据源
+ * 分片i使用 dataSources[i % dataSources.length] 对应的数据源（通过 DbUtil.registerDataSource 注册），为空时使用默认数据源
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Sharding {
+    /**
+     * 分片键的类字段名
+     */
+    String key();
+
+    /**
+     * 分片数量
+     */
+    int shards();
+
+    /**
+     * 分片策略
+     */
+    ShardStrategy strategy() default ShardStrategy.HASH;
+
+    /**
+     * RANGE 策略下每个分片的上界（不包含），按升序排列，长度与分片数量相同
+     */
+    long[] ranges() default {};
+
+    /**
+     * CUSTOM 策略使用的分片函数，需要有公共的无参构造方法
+     */
+    Class<? extends ShardFunction> function() default ShardFunction.class;
+
+    /**
+     * 分片使用的数据源名称
+     */
+    String[] dataSources() default {};
+
+    /**
+     * 物理表名后缀的格式，参数为分片下标
+     */
+    String suffixFormat() default "_%02d";
+}
@@ -9,7 +9,7 @@ import java.lang.annotation.Target;
  * @author 翁鹏
  * 表名注解
  */
-@Target(ElementType.FIELD)
+@Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface TableName {
     /**
@@ -0,0 +1,39 @@
+package com.wp.cache;
+
+import lombok.Data;
+
+/**
+ * 缓存统计信息
+ * @author 翁鹏
+ */
+@Data
+public class CacheStats {
+
+    /**
+     * 命中次数
+     */
+    private final long hitCount;
+
+    /**
+     * 未命中次数
+     */
+    private final long missCount;
+
+    /**
+     * 因容量或过期被淘汰的次数
+     */
+    private final long evictionCount;
+
+    /**
+     * 当前缓存的条目数
+     */
+    private final long size;
+
+    /**
+     * 命中率
+     */
+    public double getHitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+}
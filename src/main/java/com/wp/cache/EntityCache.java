@@ -0,0 +1,224 @@
+package com.wp.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 实体二级缓存，key为主键值，value为对象字段值的快照（按 EntityPlan 的字段顺序）
+ * 按主键哈希分段，每段是一个按访问顺序淘汰的LRU，并支持过期时间
+ * 缓存的是字段值快照而不是对象本身，调用方拿到的对象修改后不会影响缓存
+ * 主键按哈希分条记录版本号，失效时版本号加一；查询前读取版本号，放入时版本号已变化说明查询期间有写入，丢弃查到的旧值
+ * @author 翁鹏
+ */
+public class EntityCache {
+
+    /**
+     * 分段数量，必须是2的幂
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * 版本号的分条数量，必须是2的幂且不小于分段数量，每个分条属于一个分段并由该分段的锁保护
+     */
+    private static final int STRIPES = 256;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final long[] versions = new long[STRIPES];
+
+    /**
+     * 过期时间，单位为纳秒，小于等于0表示不过期
+     */
+    private final long ttlNanos;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public EntityCache(int maxSize, long ttlSeconds) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize必须大于0");
+        }
+        int segmentSize = Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+        this.ttlNanos = ttlSeconds <= 0 ? 0 : TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    /**
+     * 获取字段值快照，不存在或已过期时返回null
+     */
+    public Object[] get(Object id) {
+        Object key = normalize(id);
+        Segment segment = segmentFor(key);
+        Object[] values = null;
+        synchronized (segment) {
+            Entry entry = segment.get(key);
+            if (entry != null) {
+                if (ttlNanos > 0 && System.nanoTime() - entry.expireAt > 0) {
+                    segment.remove(key);
+                    evictionCount.increment();
+                } else {
+                    values = entry.values;
+                }
+            }
+        }
+        if (values == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return values;
+    }
+
+    /**
+     * 获取主键当前的版本号，查询数据库前调用，查询结果通过 put(id, values, version) 放入缓存
+     */
+    public long version(Object id) {
+        Object key = normalize(id);
+        synchronized (segmentFor(key)) {
+            return versions[stripe(key)];
+        }
+    }
+
+    /**
+     * 缓存字段值快照
+     */
+    public void put(Object id, Object[] values) {
+        Object key = normalize(id);
+        Segment segment = segmentFor(key);
+        long expireAt = ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0;
+        synchronized (segment) {
+            segment.put(key, new Entry(values, expireAt));
+        }
+    }
+
+    /**
+     * 缓存查询得到的字段值快照，查询期间主键已失效（版本号变化）时丢弃
+     * @param version 查询前通过 version(id) 读取的版本号
+     * @return 放入缓存时返回true
+     */
+    public boolean put(Object id, Object[] values, long version) {
+        Object key = normalize(id);
+        Segment segment = segmentFor(key);
+        long expireAt = ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0;
+        synchronized (segment) {
+            if (versions[stripe(key)] != version) {
+                return false;
+            }
+            segment.put(key, new Entry(values, expireAt));
+            return true;
+        }
+    }
+
+    /**
+     * 使缓存失效
+     */
+    public void invalidate(Object id) {
+        if (id == null) {
+            return;
+        }
+        Object key = normalize(id);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            versions[stripe(key)]++;
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            synchronized (segments[i]) {
+                // 分条 j 属于分段 j & (SEGMENTS - 1)
+                for (int j = i; j < STRIPES; j += SEGMENTS) {
+                    versions[j]++;
+                }
+                segments[i].clear();
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public CacheStats stats() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), size);
+    }
+
+    /**
+     * 整数类型的主键统一转换为Long，使 selectById(clazz, 1) 与 selectById(clazz, 1L) 命中同一条缓存
+     */
+    private static Object normalize(Object id) {
+        if (id instanceof Integer || id instanceof Short || id instanceof Byte) {
+            return ((Number) id).longValue();
+        }
+        return id;
+    }
+
+    private Segment segmentFor(Object key) {
+        return segments[hash(key) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * 主键所在的版本号分条，低位与分段相同，因此分条由所在分段的锁保护
+     */
+    private static int stripe(Object key) {
+        return hash(key) & (STRIPES - 1);
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static final class Entry {
+
+        private final Object[] values;
+
+        private final long expireAt;
+
+        Entry(Object[] values, long expireAt) {
+            this.values = values;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 按访问顺序淘汰的分段
+     */
+    private final class Segment extends LinkedHashMap<Object, Entry> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+            if (size() > maxSize) {
+                evictionCount.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
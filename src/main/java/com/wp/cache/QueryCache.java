@@ -0,0 +1,279 @@
+package com.wp.cache;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 查询结果缓存，key为(sql, 参数)，value为结果中每个对象的字段值快照（不可修改）
+ * 每个条目记录查询时所依赖表的版本号，表被修改时全局的版本号（TableVersions）加一，依赖该表的条目随之全部失效
+ * 按key哈希分段，每段是一个按访问顺序淘汰的LRU，按估算的内存占用而不是条目数量限制大小
+ * @author 翁鹏
+ */
+public class QueryCache {
+
+    /**
+     * 分段数量，必须是2的幂
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * 每个条目除结果之外的固定开销估算值
+     */
+    private static final long ENTRY_OVERHEAD = 96;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final long maxBytes;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder invalidationCount = new LongAdder();
+
+    /**
+     * @param maxBytes 缓存占用内存的上限（估算值），单位为字节，超过单个分段容量的结果不缓存
+     */
+    public QueryCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes必须大于0");
+        }
+        this.maxBytes = maxBytes;
+        long segmentBytes = Math.max(1, maxBytes / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentBytes);
+        }
+    }
+
+    /**
+     * 获取表的当前版本号，查询前获取，缓存结果时与结果一起保存
+     */
+    public long version(String tableName) {
+        return TableVersions.get(tableName);
+    }
+
+    /**
+     * 表被修改，依赖该表的缓存条目全部失效（所有查询缓存中的条目都会失效）
+     */
+    public void invalidateTable(String tableName) {
+        TableVersions.increment(tableName);
+    }
+
+    /**
+     * 获取缓存的结果，不存在或依赖的表已被修改时返回null
+     */
+    public List<Object[]> get(String sql, Object[] params) {
+        QueryKey key = new QueryKey(sql, params);
+        Segment segment = segmentFor(key);
+        List<Object[]> rows = null;
+        synchronized (segment) {
+            Entry entry = segment.get(key);
+            if (entry != null) {
+                if (entry.version != version(entry.tableName)) {
+                    segment.removeEntry(key);
+                    invalidationCount.increment();
+                } else {
+                    rows = entry.rows;
+                }
+            }
+        }
+        if (rows == null) {
+            missCount.increment();
+        } else {
+            hitCount.increment();
+        }
+        return rows;
+    }
+
+    /**
+     * 缓存查询结果
+     * @param tableName 查询依赖的表
+     * @param version 查询前获取的表版本号，查询期间表被修改时不缓存
+     * @param rows 结果中每个对象的字段值快照
+     */
+    public void put(String sql, Object[] params, String tableName, long version, List<Object[]> rows) {
+        if (version != version(tableName)) {
+            return;
+        }
+        QueryKey key = new QueryKey(sql, params.clone());
+        long bytes = ENTRY_OVERHEAD + 2L * sql.length() + estimateRow(params) + estimateRows(rows);
+        Segment segment = segmentFor(key);
+        if (bytes > segment.maxBytes) {
+            return;
+        }
+        Entry entry = new Entry(tableName, version, Collections.unmodifiableList(new ArrayList<>(rows)), bytes);
+        synchronized (segment) {
+            segment.putEntry(key, entry);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+                segment.bytes = 0;
+            }
+        }
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public QueryCacheStats stats() {
+        long size = 0;
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+                bytes += segment.bytes;
+            }
+        }
+        return new QueryCacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), invalidationCount.sum(),
+                size, bytes, maxBytes);
+    }
+
+    private Segment segmentFor(QueryKey key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    private static long estimateRows(List<Object[]> rows) {
+        long bytes = 16 + 8L * rows.size();
+        for (Object[] row : rows) {
+            bytes += estimateRow(row);
+        }
+        return bytes;
+    }
+
+    private static long estimateRow(Object[] row) {
+        long bytes = 16 + 8L * row.length;
+        for (Object value : row) {
+            bytes += estimateValue(value);
+        }
+        return bytes;
+    }
+
+    /**
+     * 估算单个值占用的内存
+     */
+    private static long estimateValue(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        if (value instanceof BigDecimal || value instanceof BigInteger) {
+            return 64;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return 16;
+        }
+        return 32;
+    }
+
+    /**
+     * 缓存key：sql + 参数
+     */
+    private static final class QueryKey {
+
+        private final String sql;
+
+        private final Object[] params;
+
+        private final int hash;
+
+        QueryKey(String sql, Object[] params) {
+            this.sql = sql;
+            this.params = params;
+            this.hash = 31 * sql.hashCode() + Arrays.deepHashCode(params);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey key = (QueryKey) o;
+            return sql.equals(key.sql) && Arrays.deepEquals(params, key.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static final class Entry {
+
+        private final String tableName;
+
+        private final long version;
+
+        private final List<Object[]> rows;
+
+        private final long bytes;
+
+        Entry(String tableName, long version, List<Object[]> rows, long bytes) {
+            this.tableName = tableName;
+            this.version = version;
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * 按访问顺序淘汰的分段，按估算的内存占用限制大小
+     */
+    private final class Segment extends LinkedHashMap<QueryKey, Entry> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long maxBytes;
+
+        private long bytes;
+
+        Segment(long maxBytes) {
+            super(16, 0.75f, true);
+            this.maxBytes = maxBytes;
+        }
+
+        void putEntry(QueryKey key, Entry entry) {
+            Entry previous = put(key, entry);
+            bytes += entry.bytes - (previous == null ? 0 : previous.bytes);
+            Iterator<Entry> iterator = values().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                bytes -= iterator.next().bytes;
+                iterator.remove();
+                evictionCount.increment();
+            }
+        }
+
+        void removeEntry(QueryKey key) {
+            Entry removed = remove(key);
+            if (removed != null) {
+                bytes -= removed.bytes;
+            }
+        }
+    }
+}
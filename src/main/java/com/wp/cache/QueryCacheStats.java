@@ -0,0 +1,54 @@
+package com.wp.cache;
+
+import lombok.Data;
+
+/**
+ * 查询缓存统计信息
+ * @author 翁鹏
+ */
+@Data
+public class QueryCacheStats {
+
+    /**
+     * 命中次数
+     */
+    private final long hitCount;
+
+    /**
+     * 未命中次数（包括因表被修改而失效的条目）
+     */
+    private final long missCount;
+
+    /**
+     * 因内存上限被淘汰的次数
+     */
+    private final long evictionCount;
+
+    /**
+     * 因表被修改而失效的次数
+     */
+    private final long invalidationCount;
+
+    /**
+     * 当前缓存的条目数
+     */
+    private final long size;
+
+    /**
+     * 当前缓存占用的内存估算值，单位为字节
+     */
+    private final long memoryBytes;
+
+    /**
+     * 内存上限，单位为字节
+     */
+    private final long maxBytes;
+
+    /**
+     * 命中率
+     */
+    public double getHitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+}
@@ -0,0 +1,34 @@
+package com.wp.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全局的表版本号，表被修改时版本号加一
+ * 所有 DbTemplate 的写操作（包括没有设置查询缓存的 DbTemplate 和 WriteBehindBuffer）都会更新版本号，
+ * 所有 QueryCache 共用，缓存条目的版本号与表的当前版本号不一致时失效
+ * @author 翁鹏
+ */
+public final class TableVersions {
+
+    private static final Map<String, AtomicLong> VERSIONS = new ConcurrentHashMap<>();
+
+    private TableVersions() {
+    }
+
+    /**
+     * 获取表的当前版本号
+     */
+    public static long get(String tableName) {
+        AtomicLong version = VERSIONS.get(tableName);
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * 表被修改，版本号加一
+     */
+    public static void increment(String tableName) {
+        VERSIONS.computeIfAbsent(tableName, key -> new AtomicLong()).incrementAndGet();
+    }
+}
@@ -0,0 +1,106 @@
+package com.wp.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * 列向量：一列的所有值连续存放，空值使用位图记录
+ * @author 翁鹏
+ */
+public abstract class ColumnVector {
+
+    /**
+     * 初始容量
+     */
+    static final int INITIAL_CAPACITY = 1024;
+
+    private final String name;
+
+    /**
+     * 空值位图，第i位为1表示第i行为空
+     */
+    private long[] nulls = new long[INITIAL_CAPACITY >>> 6];
+
+    /**
+     * 空值数量
+     */
+    private int nullCount;
+
+    int size;
+
+    ColumnVector(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 读取结果集当前行的该列并追加到末尾
+     * @param column 结果集中的列下标，从1开始
+     */
+    abstract void append(ResultSet resultSet, int column) throws SQLException;
+
+    /**
+     * 获取第row行的值（装箱），为空时返回null，逐行遍历时应使用子类的基本类型方法
+     */
+    public abstract Object getObject(int row);
+
+    /**
+     * 扩容到至少能容纳 capacity 行
+     */
+    abstract void grow(int capacity);
+
+    /**
+     * 计算新的容量：按1.5倍增长
+     */
+    static int newCapacity(int capacity, int required) {
+        return Math.max(required, capacity + (capacity >> 1));
+    }
+
+    /**
+     * 记录当前追加的行为空
+     */
+    void markNull() {
+        int word = size >>> 6;
+        if (word >= nulls.length) {
+            nulls = Arrays.copyOf(nulls, Math.max(word + 1, nulls.length + (nulls.length >> 1)));
+        }
+        nulls[word] |= 1L << size;
+        nullCount++;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 行数
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int row) {
+        int word = row >>> 6;
+        return word < nulls.length && (nulls[word] & (1L << row)) != 0;
+    }
+
+    /**
+     * 空值数量
+     */
+    public int getNullCount() {
+        return nullCount;
+    }
+
+    /**
+     * 非空值数量
+     */
+    public int count() {
+        return size - nullCount;
+    }
+
+    void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("行下标[" + row + "]超出范围，共" + size + "行");
+        }
+    }
+}
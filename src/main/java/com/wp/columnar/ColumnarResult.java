@@ -0,0 +1,155 @@
+package com.wp.columnar;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 列式查询结果
+ * 整数、浮点数列存放在基本类型数组中，字符串列使用字典编码，空值使用位图记录，
+ * 读取和聚合时不为每行创建对象，适合对大量行做统计
+ * @author 翁鹏
+ */
+public class ColumnarResult {
+
+    private final List<ColumnVector> columns;
+
+    /**
+     * 小写列名和列的映射关系
+     */
+    private final Map<String, ColumnVector> columnByLowerName = new HashMap<>();
+
+    private final int rowCount;
+
+    private ColumnarResult(List<ColumnVector> columns, int rowCount) {
+        this.columns = Collections.unmodifiableList(columns);
+        this.rowCount = rowCount;
+        for (ColumnVector column : columns) {
+            columnByLowerName.putIfAbsent(column.getName().toLowerCase(), column);
+        }
+    }
+
+    /**
+     * 读取结果集的所有行，按列的 JDBC 类型选择列向量
+     */
+    public static ColumnarResult read(ResultSet resultSet) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        ColumnVector[] vectors = new ColumnVector[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            vectors[i] = createVector(metaData, i + 1);
+        }
+        int rowCount = 0;
+        while (resultSet.next()) {
+            for (int i = 0; i < columnCount; i++) {
+                vectors[i].append(resultSet, i + 1);
+            }
+            rowCount++;
+        }
+        List<ColumnVector> columns = new ArrayList<>(columnCount);
+        Collections.addAll(columns, vectors);
+        return new ColumnarResult(columns, rowCount);
+    }
+
+    private static ColumnVector createVector(ResultSetMetaData metaData, int column) throws SQLException {
+        String name = metaData.getColumnLabel(column);
+        switch (metaData.getColumnType(column)) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return new IntColumn(name);
+            case Types.INTEGER:
+                // 无符号 int 的最大值超出 int 范围
+                return metaData.isSigned(column) ? new IntColumn(name) : new LongColumn(name);
+            case Types.BIGINT:
+                // 无符号 bigint 的最大值超出 long 范围，保留驱动返回的 BigInteger
+                return metaData.isSigned(column) ? new LongColumn(name) : new ObjectColumn(name);
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new DoubleColumn(name);
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                // 没有小数位且位数较少时没有精度损失，使用整数列，否则保留 BigDecimal
+                if (metaData.getScale(column) == 0 && metaData.getPrecision(column) > 0) {
+                    if (metaData.getPrecision(column) <= 9) {
+                        return new IntColumn(name);
+                    }
+                    if (metaData.getPrecision(column) <= 18) {
+                        return new LongColumn(name);
+                    }
+                }
+                return new ObjectColumn(name);
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return new StringColumn(name);
+            default:
+                return new ObjectColumn(name);
+        }
+    }
+
+    /**
+     * 行数
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * 所有列，顺序与查询的列一致
+     */
+    public List<ColumnVector> getColumns() {
+        return columns;
+    }
+
+    /**
+     * 按列名获取列（不区分大小写）
+     */
+    public ColumnVector column(String name) {
+        ColumnVector column = columnByLowerName.get(name.toLowerCase());
+        if (column == null) {
+            throw new IllegalArgumentException("结果中没有列[" + name + "]");
+        }
+        return column;
+    }
+
+    public NumericColumn numericColumn(String name) {
+        return column(name, NumericColumn.class);
+    }
+
+    public IntColumn intColumn(String name) {
+        return column(name, IntColumn.class);
+    }
+
+    public LongColumn longColumn(String name) {
+        return column(name, LongColumn.class);
+    }
+
+    public DoubleColumn doubleColumn(String name) {
+        return column(name, DoubleColumn.class);
+    }
+
+    public StringColumn stringColumn(String name) {
+        return column(name, StringColumn.class);
+    }
+
+    private <C extends ColumnVector> C column(String name, Class<C> type) {
+        ColumnVector column = column(name);
+        if (!type.isInstance(column)) {
+            throw new IllegalArgumentException("列[" + name + "]是" + column.getClass().getSimpleName()
+                    + "，不是" + type.getSimpleName());
+        }
+        return type.cast(column);
+    }
+}
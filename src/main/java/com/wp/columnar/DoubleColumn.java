@@ -0,0 +1,70 @@
+package com.wp.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * double列，通过 ResultSet.getDouble 读取，不装箱
+ * @author 翁鹏
+ */
+public class DoubleColumn extends NumericColumn {
+
+    private double[] values = new double[INITIAL_CAPACITY];
+
+    DoubleColumn(String name) {
+        super(name);
+    }
+
+    @Override
+    void append(ResultSet resultSet, int column) throws SQLException {
+        if (size == values.length) {
+            grow(size + 1);
+        }
+        values[size] = resultSet.getDouble(column);
+        if (resultSet.wasNull()) {
+            markNull();
+        }
+        size++;
+    }
+
+    @Override
+    void grow(int capacity) {
+        values = Arrays.copyOf(values, newCapacity(values.length, capacity));
+    }
+
+    @Override
+    public double getDouble(int row) {
+        checkRow(row);
+        return values[row];
+    }
+
+    @Override
+    public Object getObject(int row) {
+        return isNull(row) ? null : getDouble(row);
+    }
+
+    /**
+     * 非空值的和
+     */
+    public double sum() {
+        double sum = 0;
+        for (int row = 0; row < size; row++) {
+            sum += values[row];
+        }
+        // 空值存储为0，不影响求和
+        return sum;
+    }
+
+    @Override
+    public double sumAsDouble() {
+        return sum();
+    }
+
+    /**
+     * 复制出所有值，空值为0
+     */
+    public double[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,77 @@
+package com.wp.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * long列，通过 ResultSet.getLong 读取，不装箱
+ * @author 翁鹏
+ */
+public class LongColumn extends NumericColumn {
+
+    private long[] values = new long[INITIAL_CAPACITY];
+
+    LongColumn(String name) {
+        super(name);
+    }
+
+    @Override
+    void append(ResultSet resultSet, int column) throws SQLException {
+        if (size == values.length) {
+            grow(size + 1);
+        }
+        values[size] = resultSet.getLong(column);
+        if (resultSet.wasNull()) {
+            markNull();
+        }
+        size++;
+    }
+
+    @Override
+    void grow(int capacity) {
+        values = Arrays.copyOf(values, newCapacity(values.length, capacity));
+    }
+
+    /**
+     * 获取第row行的值，空值返回0
+     */
+    public long getLong(int row) {
+        checkRow(row);
+        return values[row];
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return getLong(row);
+    }
+
+    @Override
+    public Object getObject(int row) {
+        return isNull(row) ? null : getLong(row);
+    }
+
+    /**
+     * 非空值的和
+     */
+    public long sum() {
+        long sum = 0;
+        for (int row = 0; row < size; row++) {
+            sum += values[row];
+        }
+        // 空值存储为0，不影响求和
+        return sum;
+    }
+
+    @Override
+    public double sumAsDouble() {
+        return sum();
+    }
+
+    /**
+     * 复制出所有值，空值为0
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,70 @@
+package com.wp.columnar;
+
+/**
+ * 数值列，聚合时跳过空值，不为每行创建对象
+ * @author 翁鹏
+ */
+public abstract class NumericColumn extends ColumnVector {
+
+    NumericColumn(String name) {
+        super(name);
+    }
+
+    /**
+     * 获取第row行的值，空值返回0
+     */
+    public abstract double getDouble(int row);
+
+    /**
+     * 非空值的和
+     */
+    public double sumAsDouble() {
+        double sum = 0;
+        for (int row = 0; row < size; row++) {
+            if (!isNull(row)) {
+                sum += getDouble(row);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 非空值的平均值，没有非空值时返回 NaN
+     */
+    public double avg() {
+        int count = count();
+        return count == 0 ? Double.NaN : sumAsDouble() / count;
+    }
+
+    /**
+     * 非空值的最小值，没有非空值时返回 NaN
+     */
+    public double minAsDouble() {
+        double min = Double.NaN;
+        for (int row = 0; row < size; row++) {
+            if (!isNull(row)) {
+                double value = getDouble(row);
+                if (Double.isNaN(min) || value < min) {
+                    min = value;
+                }
+            }
+        }
+        return min;
+    }
+
+    /**
+     * 非空值的最大值，没有非空值时返回 NaN
+     */
+    public double maxAsDouble() {
+        double max = Double.NaN;
+        for (int row = 0; row < size; row++) {
+            if (!isNull(row)) {
+                double value = getDouble(row);
+                if (Double.isNaN(max) || value > max) {
+                    max = value;
+                }
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,41 @@
+package com.wp.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * 其他类型的列（日期、高精度小数等），通过 ResultSet.getObject 读取
+ * @author 翁鹏
+ */
+public class ObjectColumn extends ColumnVector {
+
+    private Object[] values = new Object[INITIAL_CAPACITY];
+
+    ObjectColumn(String name) {
+        super(name);
+    }
+
+    @Override
+    void append(ResultSet resultSet, int column) throws SQLException {
+        if (size == values.length) {
+            grow(size + 1);
+        }
+        values[size] = resultSet.getObject(column);
+        if (values[size] == null) {
+            markNull();
+        }
+        size++;
+    }
+
+    @Override
+    void grow(int capacity) {
+        values = Arrays.copyOf(values, newCapacity(values.length, capacity));
+    }
+
+    @Override
+    public Object getObject(int row) {
+        checkRow(row);
+        return values[row];
+    }
+}
@@ -0,0 +1,121 @@
+package com.wp.columnar;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 字典编码的字符串列：每个不同的字符串只保存一份，每行只保存字典编码
+ * 重复值多的列（状态、类型、地区等）内存占用小，并且可以按编码直接分组聚合
+ * @author 翁鹏
+ */
+public class StringColumn extends ColumnVector {
+
+    /**
+     * 空值的编码
+     */
+    public static final int NULL_CODE = -1;
+
+    private int[] codes = new int[INITIAL_CAPACITY];
+
+    private final List<String> dictionary = new ArrayList<>();
+
+    private final Map<String, Integer> codeByValue = new HashMap<>();
+
+    StringColumn(String name) {
+        super(name);
+    }
+
+    @Override
+    void append(ResultSet resultSet, int column) throws SQLException {
+        if (size == codes.length) {
+            grow(size + 1);
+        }
+        String value = resultSet.getString(column);
+        if (value == null) {
+            codes[size] = NULL_CODE;
+            markNull();
+        } else {
+            Integer code = codeByValue.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                codeByValue.put(value, code);
+            }
+            codes[size] = code;
+        }
+        size++;
+    }
+
+    @Override
+    void grow(int capacity) {
+        codes = Arrays.copyOf(codes, newCapacity(codes.length, capacity));
+    }
+
+    /**
+     * 获取第row行的字典编码，空值返回 NULL_CODE
+     */
+    public int getCode(int row) {
+        checkRow(row);
+        return codes[row];
+    }
+
+    public String getString(int row) {
+        int code = getCode(row);
+        return code == NULL_CODE ? null : dictionary.get(code);
+    }
+
+    @Override
+    public Object getObject(int row) {
+        return getString(row);
+    }
+
+    /**
+     * 字典（按首次出现的顺序，下标即编码）
+     */
+    public List<String> getDictionary() {
+        return Collections.unmodifiableList(dictionary);
+    }
+
+    /**
+     * 获取字符串的字典编码，不存在时返回 NULL_CODE
+     */
+    public int codeOf(String value) {
+        Integer code = codeByValue.get(value);
+        return code == null ? NULL_CODE : code;
+    }
+
+    /**
+     * 按字典编码统计非空值的行数，下标为编码
+     */
+    public int[] countByCode() {
+        int[] counts = new int[dictionary.size()];
+        for (int row = 0; row < size; row++) {
+            if (codes[row] != NULL_CODE) {
+                counts[codes[row]]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 按字典编码对数值列的非空值求和，下标为编码
+     */
+    public double[] sumByCode(NumericColumn values) {
+        if (values.size() != size) {
+            throw new IllegalArgumentException("列[" + getName() + "]与列[" + values.getName() + "]的行数不同");
+        }
+        double[] sums = new double[dictionary.size()];
+        for (int row = 0; row < size; row++) {
+            if (codes[row] != NULL_CODE && !values.isNull(row)) {
+                sums[codes[row]] += values.getDouble(row);
+            }
+        }
+        return sums;
+    }
+}
@@ -2,105 +2,414 @@ package com.wp.common;
 
 
 
+import cn.hutool.core.util.ClassUtil;
 import com.wp.annotation.Column;
+import com.wp.annotation.ManyToOne;
+import com.wp.annotation.OneToMany;
+import com.wp.annotation.Sharding;
 import com.wp.annotation.TableName;
+import com.wp.sharding.ShardingPlan;
+import com.wp.type.TypeHandler;
+import com.wp.type.TypeHandlers;
 import com.wp.utils.NameConvertUtil;
+import com.wp.utils.ReflectUtil;
 import org.apache.commons.lang3.StringUtils;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
 
 /**
  * 注解解析器（可减少反射次数）
+ * 解析结果按类缓存在 ClassValue 中，并发首次访问安全，读取无锁
  * @author 翁鹏
  */
 public class AnnotationParser {
     /**
-     * 存储类名和表名的映射关系
+     * 存储类和表名的映射关系
      */
-    private static Map<String, String> tableNameMap = new HashMap<>();
+    private static final ClassValue<String> TABLE_NAMES = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> clazz) {
+            return parseTableName(clazz);
+        }
+    };
+
+    /**
+     * 存储类和所有字段信息的映射关系
+     */
+    private static final ClassValue<List<ColumnInfo>> COLUMNS_INFOS = new ClassValue<List<ColumnInfo>>() {
+        @Override
+        protected List<ColumnInfo> computeValue(Class<?> clazz) {
+            return Collections.unmodifiableList(parseColumnsInfo(clazz));
+        }
+    };
+
+    /**
+     * 存储类和实体语句计划的映射关系
+     */
+    private static final ClassValue<EntityPlan> ENTITY_PLANS = new ClassValue<EntityPlan>() {
+        @Override
+        protected EntityPlan computeValue(Class<?> clazz) {
+            return new EntityPlan(clazz, getTableName(clazz), getColumnsInfo(clazz));
+        }
+    };
+
+    /**
+     * 存储类和编译期生成的实体映射器的映射关系，没有生成映射器时为 Optional.empty()
+     */
+    private static final ClassValue<Optional<EntityMapper<?>>> ENTITY_MAPPERS = new ClassValue<Optional<EntityMapper<?>>>() {
+        @Override
+        protected Optional<EntityMapper<?>> computeValue(Class<?> clazz) {
+            return Optional.ofNullable(loadEntityMapper(clazz));
+        }
+    };
+
+    /**
+     * 存储类和关联信息的映射关系
+     */
+    private static final ClassValue<List<AssociationInfo>> ASSOCIATIONS = new ClassValue<List<AssociationInfo>>() {
+        @Override
+        protected List<AssociationInfo> computeValue(Class<?> clazz) {
+            return Collections.unmodifiableList(parseAssociations(clazz));
+        }
+    };
 
     /**
-     * 存储类名和所有字段信息的映射关系
+     * 存储类和分片计划的映射关系，没有分片时为 Optional.empty()
      */
-    private static Map<String, List<ColumnInfo>> columnsInfoMap = new HashMap<>();
+    private static final ClassValue<Optional<ShardingPlan>> SHARDING_PLANS = new ClassValue<Optional<ShardingPlan>>() {
+        @Override
+        protected Optional<ShardingPlan> computeValue(Class<?> clazz) {
+            Sharding sharding = clazz.getAnnotation(Sharding.class);
+            return sharding == null ? Optional.empty() : Optional.of(new ShardingPlan(clazz, sharding));
+        }
+    };
 
     /**
      * id
      */
-    private static String ID = "id";
+    private static final String ID = "id";
 
 
     /**
      * 获取表名
      */
     public static <T> String getTableName(Class<T> clazz) {
-        String className = clazz.getName();
-        String tableName = tableNameMap.get(className);
-        if (tableName == null) {
-            // 获取注解
-            TableName tableNameAnnotation = clazz.getAnnotation(TableName.class);
-            if (tableNameAnnotation != null && StringUtils.isNotBlank(tableNameAnnotation.value())) {
-                tableName = tableNameAnnotation.value();
-            } else {
-                // 注解为空，使用驼峰类名转化为下划线命名
-                tableName = NameConvertUtil.getTableName(className);
+        return TABLE_NAMES.get(clazz);
+    }
+
+    /**
+     * 获取所有字段信息（不可修改）
+     */
+    public static <T> List<ColumnInfo> getColumnsInfo(Class<T> clazz) {
+        return COLUMNS_INFOS.get(clazz);
+    }
+
+    /**
+     * 获取实体语句计划
+     */
+    public static <T> EntityPlan getEntityPlan(Class<T> clazz) {
+        return ENTITY_PLANS.get(clazz);
+    }
+
+    /**
+     * 获取所有关联信息（不可修改）
+     */
+    public static <T> List<AssociationInfo> getAssociations(Class<T> clazz) {
+        return ASSOCIATIONS.get(clazz);
+    }
+
+    /**
+     * 获取分片计划，没有分片时返回null
+     */
+    public static <T> ShardingPlan getShardingPlan(Class<T> clazz) {
+        return SHARDING_PLANS.get(clazz).orElse(null);
+    }
+
+    /**
+     * 获取编译期生成的实体映射器，没有时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityMapper<T> getEntityMapper(Class<T> clazz) {
+        return (EntityMapper<T>) ENTITY_MAPPERS.get(clazz).orElse(null);
+    }
+
+    /**
+     * 预热：提前解析指定的类，避免应用启动后的首批请求承担解析开销
+     */
+    public static void warmUp(Class<?>... classes) {
+        for (Class<?> clazz : classes) {
+            getEntityPlan(clazz);
+        }
+    }
+
+    /**
+     * 预热：扫描包下标注了 @TableName 或含有 @Column 字段的类并提前解析
+     * 解析失败的类（例如不能作为实体类使用）跳过，不影响其他类的预热
+     * @return 返回预热成功的类数量
+     */
+    public static int warmUp(String packageName) {
+        Set<Class<?>> classes = ClassUtil.scanPackage(packageName, AnnotationParser::isEntityCandidate);
+        int count = 0;
+        for (Class<?> clazz : classes) {
+            try {
+                getEntityPlan(clazz);
+                count++;
+            } catch (RuntimeException e) {
+                // 不能作为实体类解析的类跳过
+                e.printStackTrace();
             }
-            tableNameMap.put(className, tableName);
         }
-        return tableName;
+        return count;
     }
 
     /**
-     * 获取所有字段信息
+     * 判断类是否可能是实体类：可实例化，并且标注了 @TableName 或含有 @Column 字段
      */
-    public static <T> List<ColumnInfo> getColumnsInfo(Class<T> clazz) {
-        String className = clazz.getName();
-        List<ColumnInfo> columnInfoList = columnsInfoMap.get(className);
-        if (columnInfoList == null) {
-            columnInfoList = new ArrayList<>();
-            ColumnInfo columnInfo;
-            // 获取所有字段
-            Field[] fields = clazz.getDeclaredFields();
-            for (Field field : fields) {
-                // 获取字段名
-                String fieldName = field.getName();
-                // 获取注解
-                Column columnAnnotation = field.getAnnotation(Column.class);
-                if (columnAnnotation != null && StringUtils.isNotBlank(columnAnnotation.value())) {
-                    // 判断是否为主键
-                    if (columnAnnotation.isPrimaryKey()||ID.equals(columnAnnotation.value())) {
-                        columnInfo = new ColumnInfo();
-                        columnInfo.setTableName(getTableName(clazz));
-                        columnInfo.setFieldName(fieldName);
-                        columnInfo.setColumnName(columnAnnotation.value());
-                        columnInfo.setPrimaryKey(true);
-                        columnInfoList.add(columnInfo);
-                    }
-                    // 注解不为空，使用注解的值作为表字段名
-                    columnInfo = new ColumnInfo();
-                    columnInfo.setTableName(getTableName(clazz));
-                    columnInfo.setFieldName(fieldName);
-                    columnInfo.setColumnName(columnAnnotation.value());
-                    columnInfoList.add(columnInfo);
+    private static boolean isEntityCandidate(Class<?> clazz) {
+        int modifiers = clazz.getModifiers();
+        if (clazz.isInterface() || clazz.isAnnotation() || clazz.isEnum()
+                || clazz.isAnonymousClass() || clazz.isSynthetic()
+                || Modifier.isAbstract(modifiers)
+                || (clazz.getEnclosingClass() != null && !Modifier.isStatic(modifiers))) {
+            return false;
+        }
+        if (clazz.isAnnotationPresent(TableName.class)) {
+            return true;
+        }
+        for (Field field : clazz.getDeclaredFields()) {
+            if (field.isAnnotationPresent(Column.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 加载注解处理器生成的实体映射器：与实体类同包，类名为 实体类名（内部类的$替换为_） + _EntityMapper
+     */
+    private static EntityMapper<?> loadEntityMapper(Class<?> clazz) {
+        String packageName = clazz.getPackage() == null ? "" : clazz.getPackage().getName();
+        String simpleName = packageName.isEmpty() ? clazz.getName() : clazz.getName().substring(packageName.length() + 1);
+        String mapperName = (packageName.isEmpty() ? "" : packageName + ".") + simpleName.replace('$', '_') + EntityMapper.SUFFIX;
+        try {
+            Class<?> mapperClass = Class.forName(mapperName, true, clazz.getClassLoader());
+            if (!EntityMapper.class.isAssignableFrom(mapperClass)) {
+                return null;
+            }
+            return (EntityMapper<?>) mapperClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Exception | LinkageError e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * 解析表名
+     */
+    private static String parseTableName(Class<?> clazz) {
+        // 获取注解
+        TableName tableNameAnnotation = clazz.getAnnotation(TableName.class);
+        if (tableNameAnnotation != null && StringUtils.isNotBlank(tableNameAnnotation.value())) {
+            return tableNameAnnotation.value();
+        }
+        // 注解为空，使用驼峰类名转化为下划线命名
+        return NameConvertUtil.getTableName(clazz.getName());
+    }
+
+    /**
+     * 解析所有字段信息
+     */
+    private static List<ColumnInfo> parseColumnsInfo(Class<?> clazz) {
+        List<ColumnInfo> columnInfoList = new ArrayList<>();
+        // 有生成的映射器时，字段访问器使用映射器，不再使用反射
+        EntityMapper<?> entityMapper = getEntityMapper(clazz);
+        List<String> mapperFieldNames = entityMapper == null
+                ? Collections.<String>emptyList() : Arrays.asList(entityMapper.fieldNames());
+        ColumnInfo columnInfo;
+        // 获取所有字段
+        Field[] fields = clazz.getDeclaredFields();
+        for (Field field : fields) {
+            // 跳过静态字段、编译器生成的字段和关联字段
+            if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic() || isAssociation(field)) {
+                continue;
+            }
+            // 获取字段名
+            String fieldName = field.getName();
+            // Lazy 类型的字段按值的类型处理
+            boolean lazyHolder = field.getType() == Lazy.class;
+            Class<?> fieldType = lazyHolder ? lazyValueType(field) : field.getType();
+            // 获取注解
+            Column columnAnnotation = field.getAnnotation(Column.class);
+            if (columnAnnotation != null && StringUtils.isNotBlank(columnAnnotation.value())) {
+                // 注解不为空，使用注解的值作为表字段名
+                columnInfo = new ColumnInfo();
+                // 判断是否为主键
+                if (columnAnnotation.isPrimaryKey()||ID.equals(columnAnnotation.value())) {
+                    columnInfo.setPrimaryKey(true);
+                }
+                columnInfo.setTableName(getTableName(clazz));
+                columnInfo.setFieldName(fieldName);
+                columnInfo.setColumnName(columnAnnotation.value());
+                columnInfo.setFieldType(fieldType);
+                columnInfo.setAccessor(createAccessor(field, entityMapper, mapperFieldNames));
+                if (columnAnnotation.typeHandler() != TypeHandler.class) {
+                    columnInfo.setTypeHandler(TypeHandlers.newInstance(columnAnnotation.typeHandler(), fieldType));
+                    columnInfo.setExplicitTypeHandler(true);
                 } else {
-                    columnInfo = new ColumnInfo();
-                    if (ID.equals(fieldName)){
-                        columnInfo.setPrimaryKey(true);
-                    }
-                    // 注解为空，使用驼峰字段名转化为下划线命名
-                    columnInfo.setTableName(getTableName(clazz));
-                    columnInfo.setFieldName(fieldName);
-                    columnInfo.setColumnName(NameConvertUtil.camelToUnderline(fieldName));
-                    columnInfoList.add(columnInfo);
+                    columnInfo.setTypeHandler(TypeHandlers.get(fieldType));
+                }
+                columnInfo.setLazy(columnAnnotation.lazy() || lazyHolder);
+                if (lazyHolder) {
+                    columnInfo.setAccessor(new LazyFieldAccessor(columnInfo.getAccessor()));
                 }
+                columnInfoList.add(columnInfo);
+            } else {
+                columnInfo = new ColumnInfo();
+                if (ID.equals(fieldName)){
+                    columnInfo.setPrimaryKey(true);
+                }
+                // 注解为空，使用驼峰字段名转化为下划线命名
+                columnInfo.setTableName(getTableName(clazz));
+                columnInfo.setFieldName(fieldName);
+                columnInfo.setColumnName(NameConvertUtil.camelToUnderline(fieldName));
+                columnInfo.setFieldType(fieldType);
+                columnInfo.setAccessor(createAccessor(field, entityMapper, mapperFieldNames));
+                columnInfo.setTypeHandler(TypeHandlers.get(fieldType));
+                columnInfo.setLazy(lazyHolder);
+                if (lazyHolder) {
+                    columnInfo.setAccessor(new LazyFieldAccessor(columnInfo.getAccessor()));
+                }
+                columnInfoList.add(columnInfo);
             }
-            columnsInfoMap.put(className, columnInfoList);
         }
         return columnInfoList;
     }
 
+    /**
+     * 获取 Lazy 字段的值类型
+     */
+    private static Class<?> lazyValueType(Field field) {
+        Type type = field.getGenericType();
+        if (type instanceof ParameterizedType) {
+            Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (argument instanceof Class) {
+                return (Class<?>) argument;
+            }
+            if (argument instanceof ParameterizedType) {
+                return (Class<?>) ((ParameterizedType) argument).getRawType();
+            }
+        }
+        return Object.class;
+    }
+
+    /**
+     * 判断字段是否为关联字段
+     */
+    private static boolean isAssociation(Field field) {
+        return field.isAnnotationPresent(ManyToOne.class) || field.isAnnotationPresent(OneToMany.class);
+    }
+
+    /**
+     * 解析所有关联信息
+     */
+    private static List<AssociationInfo> parseAssociations(Class<?> clazz) {
+        List<AssociationInfo> associations = new ArrayList<>();
+        for (Field field : clazz.getDeclaredFields()) {
+            ManyToOne manyToOne = field.getAnnotation(ManyToOne.class);
+            OneToMany oneToMany = field.getAnnotation(OneToMany.class);
+            if (manyToOne == null && oneToMany == null) {
+                continue;
+            }
+            AssociationInfo association = new AssociationInfo();
+            association.setFieldName(field.getName());
+            association.setAccessor(ReflectUtil.createAccessor(field));
+            if (manyToOne != null) {
+                association.setTargetClass(field.getType());
+                association.setLocalColumn(findColumn(clazz, manyToOne.joinField()));
+                association.setTargetColumn(findColumn(field.getType(), manyToOne.referencedField()));
+            } else {
+                if (!List.class.isAssignableFrom(field.getType()) && !Set.class.isAssignableFrom(field.getType())
+                        || SortedSet.class.isAssignableFrom(field.getType())) {
+                    throw new IllegalStateException("一对多关联字段[" + clazz.getName() + "." + field.getName() + "]必须是 List 或 Set");
+                }
+                Class<?> targetClass = oneToMany.targetEntity() != void.class
+                        ? oneToMany.targetEntity() : elementType(field);
+                association.setOneToMany(true);
+                association.setSetField(Set.class.isAssignableFrom(field.getType()));
+                association.setTargetClass(targetClass);
+                association.setLocalColumn(findColumn(clazz, oneToMany.referencedField()));
+                association.setTargetColumn(findColumn(targetClass, oneToMany.mappedBy()));
+            }
+            associations.add(association);
+        }
+        return associations;
+    }
+
+    /**
+     * 获取集合字段的元素类型
+     */
+    private static Class<?> elementType(Field field) {
+        Type type = field.getGenericType();
+        if (type instanceof ParameterizedType) {
+            Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (argument instanceof Class) {
+                return (Class<?>) argument;
+            }
+        }
+        throw new IllegalStateException("无法确定关联字段[" + field.getDeclaringClass().getName() + "." + field.getName() + "]的元素类型，请指定 targetEntity");
+    }
+
+    /**
+     * 查找参与连接的字段，字段名为空时使用单一主键
+     */
+    private static ColumnInfo findColumn(Class<?> clazz, String fieldName) {
+        EntityPlan plan = getEntityPlan(clazz);
+        if (StringUtils.isBlank(fieldName)) {
+            if (plan.getPrimaryKeyIndexes().length != 1) {
+                throw new IllegalStateException("表[" + plan.getTableName() + "]需要有且只有一个主键");
+            }
+            return plan.getColumns()[plan.getPrimaryKeyIndexes()[0]];
+        }
+        ColumnInfo columnInfo = plan.getColumnByField(fieldName);
+        if (columnInfo == null) {
+            throw new IllegalStateException("类[" + clazz.getName() + "]中没有字段[" + fieldName + "]");
+        }
+        return columnInfo;
+    }
+
+    /**
+     * 创建字段访问器：优先使用生成的映射器，映射器中没有该字段时使用反射
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static FieldAccessor createAccessor(Field field, EntityMapper<?> entityMapper, List<String> mapperFieldNames) {
+        int index = mapperFieldNames.indexOf(field.getName());
+        if (index < 0) {
+            return ReflectUtil.createAccessor(field);
+        }
+        EntityMapper mapper = entityMapper;
+        return new FieldAccessor() {
+            @Override
+            public Object get(Object target) {
+                return mapper.get(target, index);
+            }
+
+            @Override
+            public void set(Object target, Object value) {
+                mapper.set(target, index, value);
+            }
+        };
+    }
+
 }
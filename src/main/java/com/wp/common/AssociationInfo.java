@@ -0,0 +1,52 @@
+package com.wp.common;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * 关联信息，由 @ManyToOne / @OneToMany 注解解析得到
+ * 加载时先收集本类对象的 localColumn 的值，再按 targetColumn in (...) 查询关联类，最后在内存中按值连接
+ * @author 翁鹏
+ */
+@Data
+public class AssociationInfo {
+
+    /**
+     * 关联类字段名
+     */
+    private String fieldName;
+
+    /**
+     * 是否为一对多关联
+     */
+    private boolean oneToMany;
+
+    /**
+     * 一对多关联的字段是否为 Set
+     */
+    private boolean setField;
+
+    /**
+     * 关联类
+     */
+    private Class<?> targetClass;
+
+    /**
+     * 本类中参与连接的字段：多对一为外键字段，一对多为被引用的字段
+     */
+    private ColumnInfo localColumn;
+
+    /**
+     * 关联类中参与连接的字段：多对一为被引用的字段，一对多为外键字段
+     */
+    private ColumnInfo targetColumn;
+
+    /**
+     * 关联字段访问器
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private FieldAccessor accessor;
+
+}
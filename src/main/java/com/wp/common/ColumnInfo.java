@@ -1,6 +1,9 @@
 package com.wp.common;
 
+import com.wp.type.TypeHandler;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 /**
  * 字段信息,用来封装字段名和字段值，以及是否为主键，用于保存和更新操作，以及查询操作的结果封装，方便后续的ORM操作，比如将查询结果封装成对象，或者将对象封装成sql语句，或者将对象封装成sql语句的参数
@@ -29,6 +32,35 @@ public class ColumnInfo {
      */
     private boolean isPrimaryKey;
 
+    /**
+     * 类字段类型
+     */
+    private Class<?> fieldType;
 
+    /**
+     * 是否延迟加载：查询对象时不读取该字段
+     */
+    private boolean lazy;
+
+    /**
+     * 字段访问器
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private FieldAccessor accessor;
+
+    /**
+     * 类型处理器，解析字段时确定
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private TypeHandler<?> typeHandler;
+
+    /**
+     * 是否通过 @Column 注解指定了类型处理器，指定时绑定参数使用该处理器而不是按值的类型查找
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private boolean explicitTypeHandler;
 
 }
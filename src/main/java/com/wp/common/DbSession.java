@@ -0,0 +1,234 @@
+package com.wp.common;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 数据库会话（工作单元）
+ * 会话绑定到当前线程，期间 DbTemplate / DbUtil 的所有操作复用同一个连接，并在 commit 时一次性提交。
+ * 在已有会话中再次 begin 会加入外层会话，只有最外层的 commit 才会真正提交。
+ * <pre>
+ * try (DbSession session = DbSession.begin()) {
+ *     dbTemplate.save(a);
+ *     dbTemplate.update(b);
+ *     session.commit();
+ * }
+ * </pre>
+ * 未提交就关闭的会话会回滚。
+ * @author 翁鹏
+ */
+@Slf4j
+public class DbSession implements AutoCloseable {
+
+    /**
+     * 当前线程的会话
+     */
+    private static final ThreadLocal<DbSession> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 会话中每个数据源对应的连接
+     */
+    private final Map<DataSource, Connection> connections = new LinkedHashMap<>();
+
+    /**
+     * 每一层嵌套会话是否已经提交或回滚，栈顶为最内层
+     */
+    private final Deque<Boolean> levels = new ArrayDeque<>();
+
+    /**
+     * 会话结束（提交或回滚）后执行的回调，相同键的回调只保留第一个
+     */
+    private final Map<Object, Runnable> afterCompletions = new LinkedHashMap<>();
+
+    /**
+     * 是否已被内层会话标记为只能回滚
+     */
+    private boolean rollbackOnly;
+
+    private DbSession() {
+        levels.push(Boolean.FALSE);
+    }
+
+    /**
+     * 开启会话，当前线程已有会话时加入该会话
+     */
+    public static DbSession begin() {
+        DbSession session = CURRENT.get();
+        if (session != null) {
+            session.levels.push(Boolean.FALSE);
+            return session;
+        }
+        session = new DbSession();
+        CURRENT.set(session);
+        return session;
+    }
+
+    /**
+     * 获取当前线程的会话，没有时返回null
+     */
+    public static DbSession current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 获取会话在该数据源上的连接，第一次获取时开启事务
+     */
+    public Connection getConnection(DataSource dataSource) throws SQLException {
+        Connection connection = connections.get(dataSource);
+        if (connection == null) {
+            connection = dataSource.getConnection();
+            try {
+                // 开启事务
+                connection.setAutoCommit(false);
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+            connections.put(dataSource, connection);
+        }
+        return connection;
+    }
+
+    /**
+     * 注册会话结束（提交或回滚）后执行的回调，例如使缓存失效
+     */
+    public void afterCompletion(Runnable callback) {
+        afterCompletions.put(callback, callback);
+    }
+
+    /**
+     * 注册会话结束后执行的回调，同一个键只注册一次，例如同一张表在会话中多次写入只使缓存失效一次
+     * @param key 回调的键，需要实现 equals 和 hashCode
+     */
+    public void afterCompletion(Object key, Runnable callback) {
+        afterCompletions.putIfAbsent(key, callback);
+    }
+
+    /**
+     * 判断连接是否属于该会话
+     */
+    public boolean owns(Connection connection) {
+        return connections.containsValue(connection);
+    }
+
+    /**
+     * 提交事务，嵌套的会话只有最外层提交时才真正提交
+     * 所有连接都提交成功后才标记为已完成，提交失败时回滚尚未提交的连接
+     */
+    public void commit() throws SQLException {
+        if (levels.size() > 1) {
+            markCompleted();
+            return;
+        }
+        if (rollbackOnly) {
+            markCompleted();
+            rollbackConnections();
+            throw new SQLException("事务已被标记为回滚，无法提交");
+        }
+        if (levels.isEmpty()) {
+            throw new IllegalStateException("会话已关闭");
+        }
+        try {
+            for (Connection connection : connections.values()) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            try {
+                rollbackConnections();
+            } catch (SQLException rollbackException) {
+                e.addSuppressed(rollbackException);
+            }
+            // 已回滚，避免 close 时恢复自动提交把未完成的事务提交
+            markCompleted();
+            throw e;
+        }
+        markCompleted();
+    }
+
+    /**
+     * 回滚事务，嵌套的会话只标记为回滚，由最外层执行
+     */
+    public void rollback() throws SQLException {
+        markCompleted();
+        if (levels.size() > 1) {
+            rollbackOnly = true;
+            return;
+        }
+        rollbackConnections();
+    }
+
+    /**
+     * 关闭会话，最外层未提交时回滚并释放所有连接
+     */
+    @Override
+    public void close() throws SQLException {
+        if (levels.isEmpty()) {
+            return;
+        }
+        boolean completed = levels.pop();
+        if (!levels.isEmpty()) {
+            if (!completed) {
+                // 内层会话未提交就关闭，说明出现了异常
+                rollbackOnly = true;
+            }
+            return;
+        }
+        try {
+            // 提交后到关闭前执行的语句处于新的隐式事务中，恢复自动提交会将其提交，因此总是先回滚，刚提交或回滚后回滚不会有影响
+            rollbackConnections();
+        } finally {
+            CURRENT.remove();
+            for (Connection connection : connections.values()) {
+                try {
+                    // 恢复自动提交
+                    connection.setAutoCommit(true);
+                    connection.close();
+                } catch (SQLException e) {
+                    log.info("关闭数据库连接失败");
+                    e.printStackTrace();
+                }
+            }
+            connections.clear();
+            for (Runnable callback : afterCompletions.values()) {
+                callback.run();
+            }
+            afterCompletions.clear();
+        }
+    }
+
+    /**
+     * 标记当前层已经提交或回滚
+     */
+    private void markCompleted() {
+        if (levels.isEmpty()) {
+            throw new IllegalStateException("会话已关闭");
+        }
+        levels.pop();
+        levels.push(Boolean.TRUE);
+    }
+
+    private void rollbackConnections() throws SQLException {
+        SQLException exception = null;
+        for (Connection connection : connections.values()) {
+            try {
+                connection.rollback();
+            } catch (SQLException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
@@ -1,12 +1,39 @@
 package com.wp.common;
 
+import com.wp.cache.CacheStats;
+import com.wp.cache.EntityCache;
+import com.wp.cache.QueryCache;
+import com.wp.cache.QueryCacheStats;
+import com.wp.cache.TableVersions;
+import com.wp.columnar.ColumnarResult;
+import com.wp.sharding.ShardExecutor;
+import com.wp.sharding.ShardingPlan;
 import com.wp.utils.DbUtil;
-import com.wp.utils.ReflectUtil;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.sql.DataSource;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * ORM框架对数据库的操作
@@ -15,36 +42,161 @@ import java.util.List;
 @Slf4j
 public class DbTemplate {
 
+    private static final Object[] NO_PARAMS = new Object[0];
+
+    /**
+     * ForkJoinPool 支持的最大并行度
+     */
+    private static final int MAX_PARALLELISM = 0x7fff;
+
+    /**
+     * 批量操作时每批的条数
+     */
+    private int batchSize = 500;
+
+    /**
+     * 批量保存时是否将insert改写为多行 values 列表
+     */
+    private boolean rewriteBatchedInserts = false;
+
+    /**
+     * 是否开启脏检查：记录 selectById / select / page 等加载的对象快照，update 时只写入发生变化的字段
+     * selectAll、selectAllParallel 和 fetch 加载的关联对象是批量读取，不记录快照
+     */
+    private boolean dirtyChecking = true;
+
+    /**
+     * 流式查询时服务端游标每次拉取的行数
+     */
+    private int fetchSize = 1000;
+
+    /**
+     * 数据库方言，为null时根据数据源自动检测
+     */
+    private Dialect dialect;
+
+    /**
+     * 加载关联对象时每条 in 语句最多的参数个数
+     */
+    private int fetchChunkSize = 500;
+
+    /**
+     * 查询结果缓存，为null时不缓存；多个 DbTemplate 可以共用同一个缓存
+     */
+    private QueryCache queryCache;
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize必须大于0");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public boolean isRewriteBatchedInserts() {
+        return rewriteBatchedInserts;
+    }
+
+    public void setRewriteBatchedInserts(boolean rewriteBatchedInserts) {
+        this.rewriteBatchedInserts = rewriteBatchedInserts;
+    }
+
+    public boolean isDirtyChecking() {
+        return dirtyChecking;
+    }
+
+    public void setDirtyChecking(boolean dirtyChecking) {
+        this.dirtyChecking = dirtyChecking;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("fetchSize必须大于0");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    public void setDialect(Dialect dialect) {
+        this.dialect = dialect;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    public int getFetchChunkSize() {
+        return fetchChunkSize;
+    }
+
+    public void setFetchChunkSize(int fetchChunkSize) {
+        if (fetchChunkSize <= 0) {
+            throw new IllegalArgumentException("fetchChunkSize必须大于0");
+        }
+        this.fetchChunkSize = fetchChunkSize;
+    }
+
+    /**
+     * 在事务中执行回调，回调中的所有操作复用同一个连接并在结束时提交一次
+     * 回调抛出异常时回滚；当前线程已有会话时加入该会话
+     * @param callback
+     * @return 返回回调的结果
+     */
+    public <R> R inTransaction(TransactionCallback<R> callback) throws SQLException {
+        try (DbSession session = DbSession.begin()) {
+            R result = callback.doInTransaction(this);
+            session.commit();
+            return result;
+        }
+    }
+
     /**
      * 保存对象
+     * 单一主键为空时，开启了号段主键的实体类预先分配主键，否则保存后回填数据库生成的主键
      * @param dao
      * @return 返回受影响的行数
      */
     public int save(Object dao) throws SQLException {
-        String tableName = AnnotationParser.getTableName(dao.getClass());
-        StringBuilder columns = new StringBuilder();
-        StringBuilder values = new StringBuilder();
-        List<Object> columnValues = new ArrayList<>();
-        // 获取所有字段
-        List<ColumnInfo> columnInfoList = AnnotationParser.getColumnsInfo(dao.getClass());
-        for (ColumnInfo columnInfo : columnInfoList) {
-            // 获取字段值
-            Object fieldValue = ReflectUtil.getFieldValue(dao, columnInfo.getFieldName());
-            // 字段值不为空，保存
-            if (fieldValue != null) {
-                columns.append(columnInfo.getColumnName()).append(",");
-                values.append("?,");
-                columnValues.add(fieldValue);
-            }
-        }
-        // 删除最后一个逗号
-        columns.deleteCharAt(columns.length() - 1);
-        values.deleteCharAt(values.length() - 1);
-        // 拼接sql
-        String sql = "insert into " + tableName + "(" + columns + ") values(" + values + ")";
+        EntityPlan plan = AnnotationParser.getEntityPlan(dao.getClass());
+        // 获取字段值，字段值不为空的才保存
+        Object[] values = plan.readValues(dao);
+        assignSequenceKey(plan, dao, values);
+        invalidateCache(plan, values);
+        int rowsAffected = onShard(plan, values, (shard, shardPlan) -> insert(shardPlan, dao, values));
+        evictAfterWrite(plan, values);
+        return rowsAffected;
+    }
 
+    /**
+     * 在指定的表上保存对象
+     */
+    private int insert(EntityPlan plan, Object dao, Object[] values) throws SQLException {
+        String sql = plan.getInsertSql(values);
+        if (plan.needsGeneratedKey(values)) {
+            // 主键由数据库生成，保存后回填到对象中
+            List<Object> generatedKeys = new ArrayList<>(1);
+            int rowsAffected = DbUtil.executeInsert(sql, generatedKeys, plan.getInsertParams(values));
+            if (!generatedKeys.isEmpty()) {
+                plan.setPrimaryKeyValue(dao, values, generatedKeys.get(0));
+            }
+            return rowsAffected;
+        }
         // 执行sql
-        return DbUtil.executeUpdate(sql, columnValues.toArray());
+        return DbUtil.executeUpdate(sql, plan.getInsertParams(values));
     }
 
 
@@ -52,85 +204,525 @@ public class DbTemplate {
     /**
      * 更新对象
      * @param dao
+     * @return 返回受影响的行数，脏检查发现没有变化时返回0
      */
     public int update(Object dao) throws SQLException {
-        String tableName = AnnotationParser.getTableName(dao.getClass());
-        StringBuilder columns = new StringBuilder();
-        StringBuilder where = new StringBuilder();
-        List<Object> columnValues = new ArrayList<>();
-        List<Object> whereValues = new ArrayList<>();
-        // 获取所有字段
-        List<ColumnInfo> columnInfoList = AnnotationParser.getColumnsInfo(dao.getClass());
-        for (ColumnInfo columnInfo : columnInfoList) {
-            // 获取字段值
-            Object fieldValue = ReflectUtil.getFieldValue(dao, columnInfo.getFieldName());
-            // 字段值不为空，保存
-            if (fieldValue != null) {
-                // 判断是否是主键
-                if (columnInfo.isPrimaryKey()) {
-                    where.append(columnInfo.getColumnName()).append(" = ? and ");
-                    whereValues.add(fieldValue);
+        return updateWithResult(dao).getRowsAffected();
+    }
+
+    /**
+     * 更新对象并返回写入的字段
+     * 对象是通过 selectById / select / page 等加载的时只更新发生变化的非空字段，没有变化时不访问数据库
+     * selectAll、selectAllParallel 和 fetch 加载的关联对象没有快照，更新所有非空字段
+     * @param dao
+     * @return 返回更新结果
+     */
+    public UpdateResult updateWithResult(Object dao) throws SQLException {
+        EntityPlan plan = AnnotationParser.getEntityPlan(dao.getClass());
+        // 获取字段值，更新非空字段，以主键为条件
+        Object[] values = plan.readValues(dao);
+        Object[] snapshot = dirtyChecking ? EntitySnapshots.get(dao) : null;
+        Object[] changed = snapshot == null ? values : plan.dirtyValues(values, snapshot);
+        if (changed == null) {
+            return new UpdateResult(0, Collections.<String>emptyList(), true);
+        }
+        checkShardKey(plan, values, snapshot);
+        invalidateCache(plan, changed);
+        // 分片键为空时不知道对象在哪个分片，在所有分片上更新
+        int rowsAffected = onShardOrAll(plan, values,
+                (shard, shardPlan) -> DbUtil.executeUpdate(shardPlan.getUpdateSql(changed), shardPlan.getUpdateParams(changed)));
+        evictAfterWrite(plan, values);
+        refreshSnapshot(plan, dao, snapshot, values);
+        return new UpdateResult(rowsAffected, plan.getSetColumnNames(changed), false);
+    }
+
+    /**
+     * 删除对象
+     * @param dao
+     * @return 返回受影响的行数
+     */
+    public int delete (Object dao) throws SQLException {
+        EntityPlan plan = AnnotationParser.getEntityPlan(dao.getClass());
+        // 获取字段值，以主键为条件
+        Object[] values = plan.readValues(dao);
+        invalidateCache(plan, values);
+        EntitySnapshots.forget(dao);
+        int rowsAffected = onShardOrAll(plan, values,
+                (shard, shardPlan) -> DbUtil.executeUpdate(shardPlan.getDeleteSql(values), shardPlan.getPrimaryKeyParams(values)));
+        evictAfterWrite(plan, values);
+        return rowsAffected;
+    }
+
+
+    /**
+     * 插入或更新对象：主键已存在时更新非空字段，否则插入，一条语句完成
+     * MySQL 使用 insert ... on duplicate key update，H2 使用 merge into ... key，其他数据库使用标准 merge
+     * @param dao 主键的所有字段都不能为空
+     * @return 返回插入或更新的结果
+     */
+    public UpsertResult upsert(Object dao) throws SQLException {
+        EntityPlan plan = AnnotationParser.getEntityPlan(dao.getClass());
+        Object[] values = plan.readValues(dao);
+        invalidateCache(plan, values);
+        EntitySnapshots.forget(dao);
+        // 在对象所在分片的数据源上检测方言
+        UpsertResult result = onShard(plan, values, (shard, shardPlan) -> {
+            Dialect dialect = resolveDialect();
+            int rowsAffected = DbUtil.executeUpdate(shardPlan.getUpsertSql(dialect, values), shardPlan.getInsertParams(values));
+            return UpsertResult.of(dialect, useAffectedRows(dialect), new int[]{rowsAffected});
+        });
+        evictAfterWrite(plan, values);
+        return result;
+    }
+
+    /**
+     * 批量插入或更新对象，按sql形状分组后使用JDBC批处理执行，每批提交一次
+     * @param daos 主键的所有字段都不能为空
+     * @return 返回插入或更新的结果，受影响行数与传入顺序一致
+     */
+    public UpsertResult upsertAll(Collection<?> daos) throws SQLException {
+        int[] rowsAffected = executeBatch(daos, BatchKind.UPSERT);
+        Dialect dialect = resolveDialect();
+        return UpsertResult.of(dialect, useAffectedRows(dialect), rowsAffected);
+    }
+
+    /**
+     * 批量保存对象，按sql形状分组后使用JDBC批处理执行，每批提交一次
+     * 主键的处理与 save 相同，驱动不支持批处理返回主键时不回填
+     * @param daos
+     * @return 返回每个对象对应的受影响行数，与传入顺序一致
+     */
+    public int[] saveAll(Collection<?> daos) throws SQLException {
+        List<BatchGroup> groups = groupByStatement(daos, BatchKind.INSERT);
+        int[] rowsAffected = new int[daos.size()];
+        for (BatchGroup group : groups) {
+            // 同一组的sql相同，主键要么都为空要么都不为空
+            List<Object> generatedKeys = group.plan.needsGeneratedKey(group.values.get(0)) ? new ArrayList<>() : null;
+            int[] counts = DbUtil.withDataSource(group.dataSource, () -> rewriteBatchedInserts
+                    ? executeMultiRowInsert(group, generatedKeys)
+                    : DbUtil.executeBatch(group.sql, group.params, batchSize, generatedKeys));
+            group.fill(rowsAffected, counts);
+            evictAfterWrite(group, groups);
+            // 驱动返回的主键数量与行数一致时才能按顺序回填
+            if (generatedKeys != null && generatedKeys.size() == group.daos.size()) {
+                for (int i = 0; i < generatedKeys.size(); i++) {
+                    group.plan.setPrimaryKeyValue(group.daos.get(i), group.values.get(i), generatedKeys.get(i));
+                }
+            }
+        }
+        return rowsAffected;
+    }
+
+    /**
+     * 批量更新对象，按sql形状分组后使用JDBC批处理执行，每批提交一次
+     * @param daos
+     * @return 返回每个对象对应的受影响行数，与传入顺序一致
+     */
+    public int[] updateAll(Collection<?> daos) throws SQLException {
+        return executeBatch(daos, BatchKind.UPDATE);
+    }
+
+    /**
+     * 批量删除对象，按sql形状分组后使用JDBC批处理执行，每批提交一次
+     * @param daos
+     * @return 返回每个对象对应的受影响行数，与传入顺序一致
+     */
+    public int[] deleteAll(Collection<?> daos) throws SQLException {
+        return executeBatch(daos, BatchKind.DELETE);
+    }
+
+    private int[] executeBatch(Collection<?> daos, BatchKind kind) throws SQLException {
+        List<BatchGroup> groups = groupByStatement(daos, kind);
+        int[] rowsAffected = new int[daos.size()];
+        for (BatchGroup group : groups) {
+            group.fill(rowsAffected, DbUtil.withDataSource(group.dataSource,
+                    () -> DbUtil.executeBatch(group.sql, group.params, batchSize)));
+            evictAfterWrite(group, groups);
+            for (int i = 0; i < group.daos.size(); i++) {
+                if (kind == BatchKind.UPDATE) {
+                    refreshSnapshot(group.plan, group.daos.get(i), group.snapshots.get(i), group.values.get(i));
                 } else {
-                    columns.append(columnInfo.getColumnName()).append(" = ?,");
-                    columnValues.add(fieldValue);
+                    EntitySnapshots.forget(group.daos.get(i));
                 }
             }
         }
-        // 判断是否有主键
-        if (where.length() == 0) {
-            throw new IllegalStateException("没有找到表[" + tableName + "]中的主键");
+        return rowsAffected;
+    }
+
+    /**
+     * 将多条insert按 batchSize 改写为多行 values 语句执行
+     * 驱动只返回每条语句的总行数，总数与行数一致时记为每行1，否则记为 SUCCESS_NO_INFO
+     */
+    private int[] executeMultiRowInsert(BatchGroup group, List<Object> generatedKeys) throws SQLException {
+        int[] counts = new int[group.params.size()];
+        int offset = 0;
+        while (offset < group.params.size()) {
+            int end = Math.min(offset + batchSize, group.params.size());
+            List<Object> params = new ArrayList<>();
+            for (int i = offset; i < end; i++) {
+                Collections.addAll(params, group.params.get(i));
+            }
+            String sql = group.plan.getMultiRowInsertSql(group.sql, end - offset);
+            int total = generatedKeys == null
+                    ? DbUtil.executeUpdate(sql, params.toArray())
+                    : DbUtil.executeInsert(sql, generatedKeys, params.toArray());
+            Arrays.fill(counts, offset, end, total == end - offset ? 1 : Statement.SUCCESS_NO_INFO);
+            offset = end;
+        }
+        return counts;
+    }
+
+    /**
+     * 按sql形状对对象进行分组，保持组内顺序
+     * 分片的实体类先按分片键路由到物理表，同一sql形状在不同数据源上的对象分为不同的组
+     */
+    private List<BatchGroup> groupByStatement(Collection<?> daos, BatchKind kind) throws SQLException {
+        Map<List<Object>, BatchGroup> groups = new LinkedHashMap<>();
+        // 每张表在一批中只使查询缓存失效一次
+        Set<Class<?>> invalidated = new HashSet<>();
+        int index = 0;
+        for (Object dao : daos) {
+            EntityPlan logicalPlan = AnnotationParser.getEntityPlan(dao.getClass());
+            ShardingPlan sharding = AnnotationParser.getShardingPlan(dao.getClass());
+            Object[] values = logicalPlan.readValues(dao);
+            if (kind == BatchKind.INSERT) {
+                assignSequenceKey(logicalPlan, dao, values);
+            }
+            Object[] snapshot = kind == BatchKind.UPDATE && dirtyChecking ? EntitySnapshots.get(dao) : null;
+            Object[] changed = snapshot == null ? values : logicalPlan.dirtyValues(values, snapshot);
+            if (changed == null) {
+                // 脏检查发现没有变化，跳过，受影响行数为0
+                index++;
+                continue;
+            }
+            checkShardKey(logicalPlan, values, snapshot);
+            if (invalidated.add(logicalPlan.getEntityClass())) {
+                invalidateQueries(logicalPlan);
+            }
+            invalidateEntity(logicalPlan, changed);
+            int shard = sharding == null ? 0 : sharding.shardOf(values);
+            EntityPlan plan = sharding == null ? logicalPlan : sharding.getShardPlan(shard);
+            DataSource dataSource = sharding == null ? null : sharding.getDataSource(shard);
+            String sql;
+            Object[] params;
+            switch (kind) {
+                case INSERT:
+                    sql = plan.getInsertSql(values);
+                    params = plan.getInsertParams(values);
+                    break;
+                case UPSERT:
+                    sql = plan.getUpsertSql(DbUtil.withDataSource(dataSource, this::resolveDialect), values);
+                    params = plan.getInsertParams(values);
+                    break;
+                case UPDATE:
+                    sql = plan.getUpdateSql(changed);
+                    params = plan.getUpdateParams(changed);
+                    break;
+                default:
+                    sql = plan.getDeleteSql(values);
+                    params = plan.getPrimaryKeyParams(values);
+                    break;
+            }
+            List<Object> groupKey = Arrays.asList(sql, dataSource);
+            BatchGroup group = groups.get(groupKey);
+            if (group == null) {
+                group = new BatchGroup(plan, sql, dataSource);
+                groups.put(groupKey, group);
+            }
+            group.indexes.add(index++);
+            group.params.add(params);
+            group.daos.add(dao);
+            group.values.add(values);
+            group.snapshots.add(snapshot);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * 使二级缓存中的对象失效
+     * 在会话中时提交或回滚后再失效一次，避免其他线程在事务结束前把旧值重新放入缓存
+     */
+    private void invalidateCache(EntityPlan plan, Object[] values) {
+        invalidateQueries(plan);
+        invalidateEntity(plan, values);
+    }
+
+    /**
+     * 只使二级缓存中的对象失效，不更新表的版本号
+     */
+    private void invalidateEntity(EntityPlan plan, Object[] values) {
+        EntityCache cache = plan.getEntityCache();
+        if (cache == null) {
+            return;
+        }
+        Object id = plan.getPrimaryKeyValue(values);
+        cache.invalidate(id);
+        DbSession session = DbSession.current();
+        if (session != null && id != null) {
+            session.afterCompletion(Arrays.asList(cache, id), () -> cache.invalidate(id));
         }
-        if (whereValues.isEmpty()) {
-            throw new IllegalStateException("没有找到表[" + tableName + "]中的需要更新的字段");
+    }
+
+    /**
+     * 写入成功后再使缓存失效一次，避免写入期间其他线程把旧值重新放入缓存
+     * 在会话中时由提交或回滚后的回调使二级缓存失效
+     */
+    private void evictAfterWrite(EntityPlan plan, Object[] values) {
+        invalidateQueries(plan);
+        EntityCache cache = plan.getEntityCache();
+        if (cache != null && DbSession.current() == null) {
+            cache.invalidate(plan.getPrimaryKeyValue(values));
         }
-        // 删除多余的and
-        where.delete(where.length() - 4, where.length());
-        // 删除最后一个逗号
-        columns.deleteCharAt(columns.length() - 1);
+    }
 
-        // 拼接sql
-        String sql = "update " + tableName + " set " + columns + " where " + where;
-        columnValues.addAll(whereValues);
-        return DbUtil.executeUpdate(sql, columnValues.toArray());
+    /**
+     * 批量写入成功后使组内对象的缓存失效，分片时二级缓存在逻辑表的计划上
+     * 同一张表只在它的最后一组写入后使查询缓存失效一次
+     */
+    private void evictAfterWrite(BatchGroup group, List<BatchGroup> groups) {
+        EntityPlan plan = AnnotationParser.getEntityPlan(group.plan.getEntityClass());
+        if (isLastGroupOf(group, groups)) {
+            invalidateQueries(plan);
+        }
+        EntityCache cache = plan.getEntityCache();
+        if (cache != null && DbSession.current() == null) {
+            for (Object[] values : group.values) {
+                cache.invalidate(plan.getPrimaryKeyValue(values));
+            }
+        }
+    }
 
+    private static boolean isLastGroupOf(BatchGroup group, List<BatchGroup> groups) {
+        for (int i = groups.size() - 1; i >= 0; i--) {
+            if (groups.get(i).plan.getEntityClass() == group.plan.getEntityClass()) {
+                return groups.get(i) == group;
+            }
+        }
+        return true;
+    }
 
+    /**
+     * 使依赖该表的查询缓存失效，写入前后各失效一次，避免写入期间的查询把旧结果放入缓存
+     * 在会话中时提交或回滚后再失效一次
+     * 没有设置查询缓存时也更新全局的表版本号，使其他 DbTemplate 上的查询缓存失效
+     */
+    private void invalidateQueries(EntityPlan plan) {
+        // 分片时使用逻辑表名
+        String tableName = AnnotationParser.getTableName(plan.getEntityClass());
+        TableVersions.increment(tableName);
+        DbSession session = DbSession.current();
+        if (session != null) {
+            // 同一张表在会话中只注册一次
+            session.afterCompletion(Arrays.asList(TableVersions.class, tableName), () -> TableVersions.increment(tableName));
+        }
     }
 
     /**
-     * 删除对象
-     * @param dao
-     * @return 返回受影响的行数
+     * 使用查询缓存执行查询，命中时根据缓存的字段值快照创建新的对象，调用方修改对象不会影响缓存
+     * 会话中读到的可能是未提交的数据，不使用缓存
+     * @param clazz 查询依赖的实体类
+     * @param resultClass 结果类型，可以是实体类或投影类
      */
-    public int delete (Object dao) throws SQLException {
-        // 获取表名
-        String tableName = AnnotationParser.getTableName(dao.getClass());
-        StringBuilder where = new StringBuilder();
-        List<Object> whereValues = new ArrayList<>();
-        // 获取所有字段
-        List<ColumnInfo> columnInfoList = AnnotationParser.getColumnsInfo(dao.getClass());
-        for (ColumnInfo columnInfo : columnInfoList) {
-            // 获取字段值
-            Object fieldValue = ReflectUtil.getFieldValue(dao, columnInfo.getFieldName());
-            // 字段值不为空，保存
-            if (fieldValue != null) {
-                // 判断是否是主键
-                if (columnInfo.isPrimaryKey()) {
-                    where.append(columnInfo.getColumnName()).append(" = ? and ");
-                    whereValues.add(fieldValue);
-                }
+    private <D> List<D> cachedQuery(Class<?> clazz, Class<D> resultClass, String sql, Object[] params,
+                                    DbUtil.SqlAction<List<D>> query) throws SQLException {
+        QueryCache cache = queryCache;
+        if (cache == null || DbSession.current() != null) {
+            return query.execute();
+        }
+        EntityPlan resultPlan = AnnotationParser.getEntityPlan(resultClass);
+        List<Object[]> rows = cache.get(sql, params);
+        if (rows != null) {
+            List<D> list = new ArrayList<>(rows.size());
+            for (Object[] values : rows) {
+                list.add(resultClass.cast(resultPlan.newEntity(EntityPlan.copyValues(values))));
+            }
+            return list;
+        }
+        String tableName = AnnotationParser.getTableName(clazz);
+        long version = cache.version(tableName);
+        List<D> list = query.execute();
+        List<Object[]> snapshots = new ArrayList<>(list.size());
+        for (D d : list) {
+            // 复制 Date、byte[] 等可变的值，调用方修改对象不会影响缓存
+            snapshots.add(EntityPlan.copyValues(resultPlan.readValues(d)));
+        }
+        cache.put(sql, params, tableName, version, snapshots);
+        return list;
+    }
+
+    /**
+     * 在对象所在的分片上执行操作，实体类没有分片时直接在逻辑表上执行
+     */
+    private <R> R onShard(EntityPlan plan, Object[] values, ShardExecutor.ShardTask<R> task) throws SQLException {
+        ShardingPlan sharding = AnnotationParser.getShardingPlan(plan.getEntityClass());
+        if (sharding == null) {
+            return task.execute(0, plan);
+        }
+        return ShardExecutor.execute(sharding, sharding.shardOf(values), task);
+    }
+
+    /**
+     * 在对象所在的分片上执行更新，分片键为空时在所有分片上执行并返回受影响行数之和
+     */
+    private int onShardOrAll(EntityPlan plan, Object[] values, ShardExecutor.ShardTask<Integer> task) throws SQLException {
+        ShardingPlan sharding = AnnotationParser.getShardingPlan(plan.getEntityClass());
+        if (sharding == null || sharding.getKeyValue(values) != null) {
+            return onShard(plan, values, task);
+        }
+        int rowsAffected = 0;
+        for (Integer count : ShardExecutor.executeAll(sharding, task)) {
+            rowsAffected += count;
+        }
+        return rowsAffected;
+    }
+
+    /**
+     * 分片键决定了对象所在的物理表，更新时不允许修改
+     */
+    private void checkShardKey(EntityPlan plan, Object[] values, Object[] snapshot) {
+        ShardingPlan sharding = AnnotationParser.getShardingPlan(plan.getEntityClass());
+        if (sharding != null && sharding.isKeyChanged(values, snapshot)) {
+            throw new IllegalStateException("表[" + plan.getTableName() + "]的分片键不能修改");
+        }
+    }
+
+    /**
+     * 在所有分片上查询并按分片顺序合并结果，实体类没有分片时直接查询逻辑表
+     * @param sqlOf 根据表的语句计划获取sql
+     */
+    private <T, D> List<D> queryShards(Class<T> clazz, Class<D> resultClass, Function<EntityPlan, String> sqlOf,
+                                       Object... params) throws SQLException {
+        ShardingPlan sharding = AnnotationParser.getShardingPlan(clazz);
+        if (sharding == null) {
+            return DbUtil.executeQuery(resultClass, sqlOf.apply(AnnotationParser.getEntityPlan(clazz)), params);
+        }
+        List<D> merged = new ArrayList<>();
+        for (List<D> list : ShardExecutor.executeAll(sharding,
+                (shard, shardPlan) -> DbUtil.executeQuery(resultClass, sqlOf.apply(shardPlan), params))) {
+            merged.addAll(list);
+        }
+        return merged;
+    }
+
+    /**
+     * 根据id查询：分片键是主键时只查询所在的分片，否则查询所有分片并返回第一个结果
+     */
+    private <T, D> List<D> queryById(Class<T> clazz, Class<D> resultClass, Function<EntityPlan, String> sqlOf,
+                                     Object id) throws SQLException {
+        ShardingPlan sharding = AnnotationParser.getShardingPlan(clazz);
+        if (sharding == null || !sharding.isPrimaryKeyShardKey()) {
+            List<D> list = queryShards(clazz, resultClass, sqlOf, id);
+            return list.size() > 1 ? list.subList(0, 1) : list;
+        }
+        return ShardExecutor.execute(sharding, sharding.shardOfKey(id),
+                (shard, shardPlan) -> DbUtil.executeQuery(resultClass, sqlOf.apply(shardPlan), id));
+    }
+
+    /**
+     * 实体类开启了号段主键且主键为空时，预先分配主键
+     */
+    private void assignSequenceKey(EntityPlan plan, Object dao, Object[] values) throws SQLException {
+        SequenceAllocator allocator = plan.getSequenceAllocator();
+        if (allocator != null && plan.needsGeneratedKey(values)) {
+            // 在写入所用的数据源上分配，分片时所有分片共用一个序列
+            ShardingPlan sharding = AnnotationParser.getShardingPlan(plan.getEntityClass());
+            DataSource target = sharding == null ? null : sharding.getSequenceDataSource();
+            if (target == null) {
+                target = DbUtil.getCurrentDataSource();
             }
+            plan.setPrimaryKeyValue(dao, values, allocator.next(target));
+        }
+    }
+
+    /**
+     * 获取数据库方言，没有设置时根据数据源检测
+     */
+    private Dialect resolveDialect() throws SQLException {
+        return dialect != null ? dialect : DbUtil.getDialect();
+    }
+
+    /**
+     * MySQL 时检测连接是否开启了 useAffectedRows=true，用于区分插入和值没有变化的更新
+     */
+    private boolean useAffectedRows(Dialect dialect) throws SQLException {
+        return dialect == Dialect.MYSQL && DbUtil.isUseAffectedRows();
+    }
+
+    /**
+     * 记录加载的对象快照
+     */
+    private void trackSnapshot(EntityPlan plan, Object dao, Object[] values) {
+        if (dirtyChecking) {
+            EntitySnapshots.track(dao, values != null ? values : plan.readValues(dao));
+        }
+    }
+
+    /**
+     * 更新成功后刷新对象快照：写入的字段以当前值为准，空字段没有写入，保留原值
+     * 在会话中时事务可能回滚，直接清除快照，下次更新退回到更新所有非空字段
+     */
+    private void refreshSnapshot(EntityPlan plan, Object dao, Object[] snapshot, Object[] values) {
+        if (snapshot == null) {
+            return;
+        }
+        if (DbSession.current() != null) {
+            EntitySnapshots.forget(dao);
+        } else {
+            EntitySnapshots.track(dao, plan.mergeSnapshot(snapshot, values));
         }
-        if (where.length() == 0){
-            throw new IllegalStateException("没有找到表[" + tableName + "]中的主键");
+    }
+
+    /**
+     * 批量操作类型
+     */
+    private enum BatchKind {
+        INSERT, UPDATE, DELETE, UPSERT
+    }
+
+    /**
+     * 同一sql形状的一组批量操作
+     */
+    private static class BatchGroup {
+
+        private final EntityPlan plan;
+
+        private final String sql;
+
+        /**
+         * 执行的数据源，为null时使用默认数据源
+         */
+        private final DataSource dataSource;
+
+        /**
+         * 组内每条参数对应的对象在传入集合中的下标
+         */
+        private final List<Integer> indexes = new ArrayList<>();
+
+        private final List<Object[]> params = new ArrayList<>();
+
+        /**
+         * 组内的对象、对象的字段值以及加载时的快照（未记录快照时为null）
+         */
+        private final List<Object> daos = new ArrayList<>();
+
+        private final List<Object[]> values = new ArrayList<>();
+
+        private final List<Object[]> snapshots = new ArrayList<>();
+
+        BatchGroup(EntityPlan plan, String sql, DataSource dataSource) {
+            this.plan = plan;
+            this.sql = sql;
+            this.dataSource = dataSource;
         }
-        if (whereValues.isEmpty()){
-            throw new IllegalStateException("没有找到表[" + tableName + "]中的主键值，无法删除");
+
+        /**
+         * 将组内的受影响行数回填到传入顺序的结果中
+         */
+        void fill(int[] rowsAffected, int[] counts) {
+            for (int i = 0; i < counts.length; i++) {
+                rowsAffected[indexes.get(i)] = counts[i];
+            }
         }
-        // 删除多余的and
-        where.delete(where.length() - 4, where.length());
-        // 拼接sql
-        String sql = "delete from " + tableName + " where " + where;
-        return DbUtil.executeUpdate(sql, whereValues.toArray());
     }
 
 
@@ -140,16 +732,537 @@ public class DbTemplate {
      * @return 返回对象集合
      */
     public <T> List<T> selectAll(Class<T> clazz) throws SQLException {
-        // 获取表名
-        String tableName = AnnotationParser.getTableName(clazz);
-        // 拼接sql
-        String sql = "select * from " + tableName;
-        // 执行sql
-        List<T> list = DbUtil.executeQuery(clazz,sql);
-        // 将结果集转换为对象集合
+        // 使用预先拼好的sql，分片时查询所有分片
+        String sql = AnnotationParser.getEntityPlan(clazz).getSelectAllSql();
+        // 批量读取，不记录脏检查快照
+        return cachedQuery(clazz, clazz, sql, NO_PARAMS, () -> queryShards(clazz, clazz, EntityPlan::getSelectAllSql));
+    }
+
+    /**
+     * 使用sql查询对象，例如带条件的查询
+     * 开启了查询缓存时结果按(sql, 参数)缓存，实体类对应的表被修改时失效，sql应只查询该表
+     * @param clazz
+     * @param sql
+     * @param params
+     * @return 返回对象集合
+     */
+    public <T> List<T> select(Class<T> clazz, String sql, Object... params) throws SQLException {
+        List<T> list = cachedQuery(clazz, clazz, sql, params, () -> DbUtil.executeQuery(clazz, sql, params));
+        EntityPlan plan = AnnotationParser.getEntityPlan(clazz);
+        for (T t : list) {
+            trackSnapshot(plan, t, null);
+        }
+        return list;
+    }
+
+    /**
+     * 获取查询缓存的统计信息，未开启查询缓存时返回null
+     * @return 返回查询缓存统计信息
+     */
+    public QueryCacheStats getQueryCacheStats() {
+        QueryCache cache = queryCache;
+        return cache == null ? null : cache.stats();
+    }
+
+    /**
+     * 按主键顺序分页查询（keyset分页）
+     * 使用 where pk > ? order by pk limit ? 代替 offset，任意深度的页查询开销相同
+     * @param clazz
+     * @param afterKey 上一页最后一行的主键，单一主键时为主键值，联合主键时为按主键字段顺序的数组，第一页为null
+     * @param limit 每页条数
+     * @return 返回对象集合
+     */
+    public <T> List<T> page(Class<T> clazz, Object afterKey, int limit) throws SQLException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit必须大于0");
+        }
+        EntityPlan plan = AnnotationParser.getEntityPlan(clazz);
+        String sql = plan.getPageSql(afterKey);
+        if (sql == null) {
+            throw new IllegalStateException("没有找到表[" + plan.getTableName() + "]中的主键");
+        }
+        List<T> list = queryShards(clazz, clazz, shardPlan -> shardPlan.getPageSql(afterKey), plan.getPageParams(afterKey, limit));
+        if (AnnotationParser.getShardingPlan(clazz) != null) {
+            // 每个分片各取一页，按主键归并后取前 limit 条
+            list.sort(Comparator.comparing(plan::getKey, DbTemplate::compareKeys));
+            list = new ArrayList<>(list.subList(0, Math.min(limit, list.size())));
+        }
+        for (T t : list) {
+            trackSnapshot(plan, t, null);
+        }
         return list;
     }
 
+    /**
+     * 比较两个主键，联合主键按字段顺序逐个比较
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareKeys(Object a, Object b) {
+        if (a instanceof Object[]) {
+            Object[] left = (Object[]) a;
+            Object[] right = (Object[]) b;
+            for (int i = 0; i < left.length; i++) {
+                int result = ((Comparable) left[i]).compareTo(right[i]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        }
+        return ((Comparable) a).compareTo(b);
+    }
+
+    /**
+     * 按主键顺序逐页读取所有对象
+     * @param clazz
+     * @param limit 每页条数
+     * @return 返回分页迭代器
+     */
+    public <T> KeysetPager<T> pages(Class<T> clazz, int limit) {
+        return new KeysetPager<>(this, clazz, null, limit);
+    }
+
+    /**
+     * 从指定主键之后开始逐页读取对象
+     * @param clazz
+     * @param afterKey 起始主键（不包含）
+     * @param limit 每页条数
+     * @return 返回分页迭代器
+     */
+    public <T> KeysetPager<T> pages(Class<T> clazz, Object afterKey, int limit) {
+        return new KeysetPager<>(this, clazz, afterKey, limit);
+    }
+
+    /**
+     * 投影查询：只查询 projectionClass 需要的字段并映射为 projectionClass 对象
+     * 投影类的字段按字段名（其次按表字段名）对应到实体类的字段，生成的sql按(实体类, 投影类)缓存
+     * @param clazz 实体类
+     * @param projectionClass 投影类（DTO）
+     * @return 返回投影对象集合
+     */
+    public <T, D> List<D> selectAll(Class<T> clazz, Class<D> projectionClass) throws SQLException {
+        String sql = AnnotationParser.getEntityPlan(clazz).getProjection(projectionClass).getSelectSql();
+        return cachedQuery(clazz, projectionClass, sql, NO_PARAMS,
+                () -> queryShards(clazz, projectionClass, shardPlan -> shardPlan.getProjection(projectionClass).getSelectSql()));
+    }
+
+    /**
+     * 投影查询：根据id只查询 projectionClass 需要的字段
+     * @param clazz 实体类
+     * @param projectionClass 投影类（DTO）
+     * @param id
+     * @return 返回投影对象
+     */
+    public <T, D> D selectById(Class<T> clazz, Class<D> projectionClass, Object id) throws SQLException {
+        EntityPlan plan = AnnotationParser.getEntityPlan(clazz);
+        String sql = plan.getProjection(projectionClass).getSelectByIdSql();
+        if (sql == null || plan.getPrimaryKeyIndexes().length != 1) {
+            throw new IllegalStateException("表[" + plan.getTableName() + "]需要有且只有一个主键");
+        }
+        List<D> list = queryById(clazz, projectionClass, shardPlan -> shardPlan.getProjection(projectionClass).getSelectByIdSql(), id);
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * 只查询实体类的部分字段，其余字段为null
+     * @param clazz
+     * @param fieldNames 需要查询的类字段名
+     * @return 返回对象集合
+     */
+    public <T> List<T> selectFields(Class<T> clazz, String... fieldNames) throws SQLException {
+        EntityPlan plan = AnnotationParser.getEntityPlan(clazz);
+        List<T> list = cachedQuery(clazz, clazz, plan.getProjection(fieldNames).getSelectSql(), NO_PARAMS,
+                () -> queryShards(clazz, clazz, shardPlan -> shardPlan.getProjection(fieldNames).getSelectSql()));
+        // 未查询的字段为null，快照中也为null，更新时不会被写入
+        for (T t : list) {
+            trackSnapshot(plan, t, null);
+        }
+        return list;
+    }
+
+    /**
+     * 列式查询实体类的字段，数值列存放在基本类型数组中，字符串列使用字典编码
+     * 结果按表字段名取列，适合对大量行做统计而不需要对象的场景
+     * @param clazz
+     * @param fieldNames 需要查询的类字段名，为空时查询所有字段
+     * @return 返回列式结果
+     */
+    public <T> ColumnarResult selectColumnar(Class<T> clazz, String... fieldNames) throws SQLException {
+        EntityPlan plan = AnnotationParser.getEntityPlan(clazz);
+        if (AnnotationParser.getShardingPlan(clazz) != null) {
+            throw new IllegalStateException("分片表[" + plan.getTableName() + "]不支持列式查询，请使用sql分别查询各个分片");
+        }
+        String sql = fieldNames.length == 0 ? plan.getSelectAllSql() : plan.getProjection(fieldNames).getSelectSql();
+        return DbUtil.executeColumnar(sql);
+    }
+
+    /**
+     * 使用sql进行列式查询，例如只查询需要统计的字段或带条件的查询
+     * @param sql
+     * @param params
+     * @return 返回列式结果
+     */
+    public ColumnarResult selectColumnar(String sql, Object... params) throws SQLException {
+        return DbUtil.executeColumnar(sql, params);
+    }
+
+    /**
+     * 流式查询所有对象，逐行映射，内存占用与表大小无关
+     * 返回的流占用一个数据库连接，需要关闭流以释放连接，建议配合 try-with-resources 使用
+     * @param clazz
+     * @return 返回对象流
+     */
+    public <T> Stream<T> stream(Class<T> clazz) throws SQLException {
+        ShardingPlan sharding = AnnotationParser.getShardingPlan(clazz);
+        if (sharding == null) {
+            return iterate(clazz).stream();
+        }
+        // 分片时依次读取每个分片，读完一个分片后才打开下一个分片的游标
+        return IntStream.range(0, sharding.getShardCount()).boxed().flatMap(shard -> {
+            try {
+                return ShardExecutor.execute(sharding, shard,
+                        (current, shardPlan) -> DbUtil.executeCursor(clazz, fetchSize, shardPlan.getSelectAllSql())).stream();
+            } catch (SQLException e) {
+                throw new IllegalStateException("查询分片[" + shard + "]失败", e);
+            }
+        });
+    }
+
+    /**
+     * 并行扫描所有对象：按主键的最小值和最大值把主键范围平均分为 partitions 个分区，
+     * 每个分区在 ForkJoinPool 中使用各自的连接查询并映射，结果按分区顺序合并
+     * 并行度不超过提供读连接的连接池（读写分离时为从库）的最大连接数；会话中时在当前线程依次查询各分区
+     * 主键分布不均匀时各分区的行数不同，可以适当增加分区数量
+     * @param clazz 实体类需要有单一的整数主键
+     * @param partitions 分区数量
+     * @return 返回对象集合
+     */
+    public <T> List<T> selectAllParallel(Class<T> clazz, int partitions) throws SQLException {
+        EntityPlan plan = AnnotationParser.getEntityPlan(clazz);
+        List<long[]> ranges = partitionKeyRange(plan, partitions);
+        List<List<T>> results = new ArrayList<>(ranges.size());
+        int parallelism = Math.min(Math.min(ranges.size(), DbUtil.getMaxReadActive()), MAX_PARALLELISM);
+        if (DbSession.current() != null || parallelism <= 1) {
+            for (long[] range : ranges) {
+                results.add(scanRange(clazz, plan, range));
+            }
+        } else {
+            List<Callable<List<T>>> tasks = new ArrayList<>(ranges.size());
+            for (long[] range : ranges) {
+                // 在线程池中沿用调用方的数据源和读写分离路由状态（例如 forcePrimary）
+                tasks.add(DbUtil.propagate(() -> scanRange(clazz, plan, range)));
+            }
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (Future<List<T>> future : pool.invokeAll(tasks)) {
+                    results.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("并行扫描被中断", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SQLException) {
+                    throw (SQLException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new SQLException("并行扫描失败", e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        int total = 0;
+        for (List<T> list : results) {
+            total += list.size();
+        }
+        // 批量读取，不记录脏检查快照
+        List<T> merged = new ArrayList<>(total);
+        for (List<T> list : results) {
+            merged.addAll(list);
+        }
+        return merged;
+    }
+
+    /**
+     * 并行扫描所有对象，返回并行流，每个分区在执行终止操作的 ForkJoinPool（默认为公共池）中查询并映射
+     * 同时查询的分区数量不超过提供读连接的连接池（读写分离时为从库）的最大连接数；会话中时返回顺序流
+     * @param clazz 实体类需要有单一的整数主键
+     * @param partitions 分区数量
+     * @return 返回对象流
+     */
+    public <T> Stream<T> streamParallel(Class<T> clazz, int partitions) throws SQLException {
+        EntityPlan plan = AnnotationParser.getEntityPlan(clazz);
+        List<long[]> ranges = partitionKeyRange(plan, partitions);
+        if (DbSession.current() != null) {
+            return ranges.stream().flatMap(range -> scanRangeUnchecked(() -> scanRange(clazz, plan, range), range, null).stream());
+        }
+        Semaphore permits = new Semaphore(Math.max(1, Math.min(ranges.size(), DbUtil.getMaxReadActive())));
+        // 在调用方线程捕获数据源和读写分离路由状态，流的终止操作在其他线程执行时沿用
+        List<Callable<List<T>>> tasks = new ArrayList<>(ranges.size());
+        for (long[] range : ranges) {
+            tasks.add(DbUtil.propagate(() -> scanRange(clazz, plan, range)));
+        }
+        return IntStream.range(0, ranges.size()).parallel().boxed()
+                .flatMap(i -> scanRangeUnchecked(tasks.get(i), ranges.get(i), permits).stream());
+    }
+
+    /**
+     * 查询主键的最小值和最大值，平均分为不超过 partitions 个两端都包含的主键范围
+     */
+    private List<long[]> partitionKeyRange(EntityPlan plan, int partitions) throws SQLException {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions必须大于0");
+        }
+        if (AnnotationParser.getShardingPlan(plan.getEntityClass()) != null) {
+            throw new IllegalStateException("分片表[" + plan.getTableName() + "]请使用 selectAll，各分片已经并行查询");
+        }
+        if (plan.getKeyBoundsSql() == null || !isIntegralKey(plan.getColumns()[plan.getPrimaryKeyIndexes()[0]].getFieldType())) {
+            throw new IllegalStateException("表[" + plan.getTableName() + "]并行扫描需要单一的整数主键");
+        }
+        ColumnarResult bounds = DbUtil.executeColumnar(plan.getKeyBoundsSql());
+        if (bounds.getRowCount() == 0 || bounds.getColumns().get(0).isNull(0)) {
+            // 空表
+            return Collections.emptyList();
+        }
+        long min = ((Number) bounds.getColumns().get(0).getObject(0)).longValue();
+        long max = ((Number) bounds.getColumns().get(1).getObject(0)).longValue();
+        long span = max - min;
+        int count = span < partitions ? (int) span + 1 : partitions;
+        long step = span / count + 1;
+        List<long[]> ranges = new ArrayList<>(count);
+        for (long start = min; start <= max && ranges.size() < count; start += step) {
+            ranges.add(new long[]{start, Math.min(max, start + step - 1)});
+        }
+        return ranges;
+    }
+
+    private static boolean isIntegralKey(Class<?> type) {
+        return type == Long.class || type == long.class || type == Integer.class || type == int.class
+                || type == Short.class || type == short.class;
+    }
+
+    /**
+     * 查询一个主键范围内的对象
+     */
+    private <T> List<T> scanRange(Class<T> clazz, EntityPlan plan, long[] range) throws SQLException {
+        return DbUtil.executeQuery(clazz, plan.getKeyRangeSql(), range[0], range[1]);
+    }
+
+    /**
+     * 在流中查询一个主键范围内的对象
+     * @param scan 查询该主键范围的操作
+     * @param permits 限制同时查询的分区数量，为null时不限制
+     */
+    private <T> List<T> scanRangeUnchecked(Callable<List<T>> scan, long[] range, Semaphore permits) {
+        try {
+            if (permits == null) {
+                return scan.call();
+            }
+            permits.acquire();
+            try {
+                return scan.call();
+            } finally {
+                permits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("并行扫描被中断", e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("并行扫描主键范围[" + range[0] + ", " + range[1] + "]失败", e);
+        }
+    }
+
+    /**
+     * 以游标方式遍历所有对象，读取完毕或关闭游标时释放连接
+     * @param clazz
+     * @return 返回对象游标
+     */
+    public <T> EntityCursor<T> iterate(Class<T> clazz) throws SQLException {
+        if (AnnotationParser.getShardingPlan(clazz) != null) {
+            throw new IllegalStateException("分片表[" + AnnotationParser.getTableName(clazz) + "]请使用 stream 遍历");
+        }
+        String sql = AnnotationParser.getEntityPlan(clazz).getSelectAllSql();
+        return DbUtil.executeCursor(clazz, fetchSize, sql);
+    }
+
+    /**
+     * 批量加载对象的关联字段（@ManyToOne / @OneToMany）
+     * 每个关联只查询一次关联表：收集所有对象的连接字段值，按 fetchChunkSize 分批使用 in 查询，再在内存中按值连接
+     * @param daos 同一实体类的对象
+     * @param fieldNames 需要加载的关联字段名，为空时加载所有关联字段
+     * @return 返回传入的对象集合
+     */
+    public <T> List<T> fetch(List<T> daos, String... fieldNames) throws SQLException {
+        if (daos.isEmpty()) {
+            return daos;
+        }
+        Class<?> clazz = daos.get(0).getClass();
+        List<AssociationInfo> associations = AnnotationParser.getAssociations(clazz);
+        List<String> names = Arrays.asList(fieldNames);
+        int fetched = 0;
+        for (AssociationInfo association : associations) {
+            if (names.isEmpty() || names.contains(association.getFieldName())) {
+                fetchAssociation(daos, association);
+                fetched++;
+            }
+        }
+        if (fetched < names.size()) {
+            throw new IllegalStateException("类[" + clazz.getName() + "]中没有关联字段" + names);
+        }
+        return daos;
+    }
+
+    /**
+     * 加载一个关联字段
+     */
+    private void fetchAssociation(List<?> daos, AssociationInfo association) throws SQLException {
+        FieldAccessor localAccessor = association.getLocalColumn().getAccessor();
+        FieldAccessor targetAccessor = association.getTargetColumn().getAccessor();
+        // 按连接字段的值对对象分组，值为空的对象没有关联对象
+        Map<Object, List<Object>> owners = new LinkedHashMap<>();
+        for (Object dao : daos) {
+            Object value = localAccessor.get(dao);
+            if (value == null) {
+                association.getAccessor().set(dao, association.isOneToMany() ? newCollection(association, Collections.emptyList()) : null);
+            } else {
+                owners.computeIfAbsent(joinKey(value), key -> new ArrayList<>()).add(dao);
+            }
+        }
+        // 分批查询关联对象，按连接字段的值建立哈希表
+        Map<Object, List<Object>> targets = new HashMap<>();
+        List<Object> keys = new ArrayList<>(owners.keySet());
+        for (int offset = 0; offset < keys.size(); offset += fetchChunkSize) {
+            List<Object> chunk = keys.subList(offset, Math.min(offset + fetchChunkSize, keys.size()));
+            for (Object target : selectIn(association.getTargetClass(), EntityPlan::getSelectAllSql, association.getTargetColumn(), chunk)) {
+                // 批量读取的关联对象不记录脏检查快照
+                targets.computeIfAbsent(joinKey(targetAccessor.get(target)), key -> new ArrayList<>()).add(target);
+            }
+        }
+        // 连接
+        for (Map.Entry<Object, List<Object>> entry : owners.entrySet()) {
+            List<Object> matched = targets.getOrDefault(entry.getKey(), Collections.emptyList());
+            for (Object dao : entry.getValue()) {
+                association.getAccessor().set(dao, association.isOneToMany()
+                        ? newCollection(association, matched) : matched.isEmpty() ? null : matched.get(0));
+            }
+        }
+    }
+
+    /**
+     * 批量加载对象的延迟加载字段，按主键分批使用 in 查询，每批一次查询
+     * @param daos 同一实体类的对象
+     * @param fieldNames 需要加载的字段名，为空时加载所有延迟加载字段
+     * @return 返回传入的对象集合
+     */
+    public <T> List<T> fetchLazy(List<T> daos, String... fieldNames) throws SQLException {
+        if (daos.isEmpty()) {
+            return daos;
+        }
+        Class<?> clazz = daos.get(0).getClass();
+        EntityPlan plan = AnnotationParser.getEntityPlan(clazz);
+        List<String> names = Arrays.asList(fieldNames);
+        List<ColumnInfo> lazyColumns = new ArrayList<>();
+        for (ColumnInfo column : plan.getLazyColumns()) {
+            if (names.isEmpty() || names.contains(column.getFieldName())) {
+                lazyColumns.add(column);
+            }
+        }
+        if (lazyColumns.size() < names.size()) {
+            throw new IllegalStateException("类[" + clazz.getName() + "]中没有延迟加载字段" + names);
+        }
+        if (lazyColumns.isEmpty()) {
+            return daos;
+        }
+        ColumnInfo idColumn = plan.getColumns()[plan.getPrimaryKeyIndexes()[0]];
+        String[] selectFields = new String[lazyColumns.size() + 1];
+        selectFields[0] = idColumn.getFieldName();
+        // 延迟加载字段在快照中的下标
+        int[] lazyIndexes = new int[lazyColumns.size()];
+        List<ColumnInfo> columns = Arrays.asList(plan.getColumns());
+        for (int i = 0; i < lazyColumns.size(); i++) {
+            selectFields[i + 1] = lazyColumns.get(i).getFieldName();
+            lazyIndexes[i] = columns.indexOf(lazyColumns.get(i));
+        }
+        // 按主键对对象分组
+        Map<Object, List<Object>> owners = new LinkedHashMap<>();
+        for (Object dao : daos) {
+            Object id = idColumn.getAccessor().get(dao);
+            if (id != null) {
+                owners.computeIfAbsent(joinKey(id), key -> new ArrayList<>()).add(dao);
+            }
+        }
+        List<Object> keys = new ArrayList<>(owners.keySet());
+        for (int offset = 0; offset < keys.size(); offset += fetchChunkSize) {
+            List<Object> chunk = keys.subList(offset, Math.min(offset + fetchChunkSize, keys.size()));
+            for (Object loaded : selectIn(clazz, shardPlan -> shardPlan.getProjection(selectFields).getSelectSql(), idColumn, chunk)) {
+                for (Object dao : owners.getOrDefault(joinKey(idColumn.getAccessor().get(loaded)), Collections.emptyList())) {
+                    copyLazyValues(lazyColumns, lazyIndexes, loaded, dao);
+                }
+            }
+        }
+        return daos;
+    }
+
+    /**
+     * 将查询到的延迟加载字段写入对象，并同步到脏检查快照中，避免加载的值被当作修改
+     */
+    private void copyLazyValues(List<ColumnInfo> lazyColumns, int[] lazyIndexes, Object loaded, Object dao) {
+        Object[] snapshot = dirtyChecking ? EntitySnapshots.get(dao) : null;
+        Object[] merged = snapshot == null ? null : snapshot.clone();
+        for (int i = 0; i < lazyColumns.size(); i++) {
+            ColumnInfo column = lazyColumns.get(i);
+            Object value = column.getAccessor().get(loaded);
+            column.getAccessor().set(dao, value);
+            if (merged != null) {
+                merged[lazyIndexes[i]] = value;
+            }
+        }
+        if (merged != null) {
+            EntitySnapshots.track(dao, merged);
+        }
+    }
+
+    /**
+     * 按字段值批量查询，参数个数补齐到2的幂（不超过 fetchChunkSize），补齐的参数重复最后一个值
+     * @param selectOf 根据表的语句计划获取不带条件的查询语句
+     */
+    private <T> List<T> selectIn(Class<T> clazz, Function<EntityPlan, String> selectOf, ColumnInfo column,
+                                 List<Object> keys) throws SQLException {
+        int count = keys.size() == 1 ? 1 : Math.min(Integer.highestOneBit(keys.size() - 1) << 1, fetchChunkSize);
+        Object[] params = new Object[count];
+        for (int i = 0; i < count; i++) {
+            params[i] = keys.get(Math.min(i, keys.size() - 1));
+        }
+        return queryShards(clazz, clazz, plan -> plan.getSelectInSql(selectOf.apply(plan), column, count), params);
+    }
+
+    /**
+     * 连接使用的键：整数统一为 Long，外键与主键的类型不同时（例如 int 和 Long）也能匹配
+     */
+    private static Object joinKey(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        return value;
+    }
+
+    private static Collection<Object> newCollection(AssociationInfo association, List<Object> elements) {
+        return association.isSetField() ? new LinkedHashSet<>(elements) : new ArrayList<>(elements);
+    }
+
+    /**
+     * 获取实体二级缓存的统计信息，实体未开启缓存时返回null
+     * @param clazz
+     * @return 返回缓存统计信息
+     */
+    public CacheStats getCacheStats(Class<?> clazz) {
+        EntityCache cache = AnnotationParser.getEntityPlan(clazz).getEntityCache();
+        return cache == null ? null : cache.stats();
+    }
+
     /**
      * 根据id查询对象
      * @param clazz
@@ -157,14 +1270,39 @@ public class DbTemplate {
      * @return 返回对象
      */
     public <T> T selectById(Class<T> clazz, Object id) throws SQLException {
-        // 获取表名
-        String tableName = AnnotationParser.getTableName(clazz);
-        // 拼接sql
-        String sql = "select * from " + tableName + " where id = ?";
-        // 执行sql
-        List<T> list = DbUtil.executeQuery(clazz, sql, id);
-        // 将结果集转换为对象集合
-        return list.isEmpty() ? null : list.get(0);
+        EntityPlan plan = AnnotationParser.getEntityPlan(clazz);
+        // 获取预先拼好的sql
+        String sql = plan.getSelectByIdSql();
+        if (sql == null || plan.getPrimaryKeyIndexes().length != 1) {
+            throw new IllegalStateException("表[" + plan.getTableName() + "]需要有且只有一个主键");
+        }
+        // 优先从二级缓存中获取，返回的是根据快照新建的对象
+        // 会话中读到的可能是未提交的数据，缓存中的值也可能早于会话中的写入，会话中不使用缓存
+        EntityCache cache = DbSession.current() == null ? plan.getEntityCache() : null;
+        long version = 0;
+        if (cache != null) {
+            Object[] values = cache.get(id);
+            if (values != null) {
+                // 复制 Date、byte[] 等可变的值，调用方修改对象不会影响缓存
+                T t = clazz.cast(plan.newEntity(EntityPlan.copyValues(values)));
+                trackSnapshot(plan, t, values);
+                return t;
+            }
+            // 查询前读取版本号，查询期间有写入使缓存失效时不放入查到的旧值
+            version = cache.version(id);
+        }
+        // 执行sql，分片时路由到所在的分片
+        List<T> list = queryById(clazz, clazz, EntityPlan::getSelectByIdSql, id);
+        if (list.isEmpty()) {
+            return null;
+        }
+        T t = list.get(0);
+        Object[] values = cache != null || dirtyChecking ? plan.readValues(t) : null;
+        if (cache != null) {
+            cache.put(id, EntityPlan.copyValues(values), version);
+        }
+        trackSnapshot(plan, t, values);
+        return t;
     }
 
 
@@ -0,0 +1,37 @@
+package com.wp.common;
+
+/**
+ * 数据库方言，决定 upsert 等非标准语句的写法
+ * @author 翁鹏
+ */
+public enum Dialect {
+
+    /**
+     * MySQL / MariaDB：insert ... on duplicate key update
+     */
+    MYSQL,
+
+    /**
+     * H2：merge into ... key(...) values(...)
+     */
+    H2,
+
+    /**
+     * 标准sql：merge into ... using (values ...) on ... when matched ... when not matched ...
+     */
+    STANDARD;
+
+    /**
+     * 根据 DatabaseMetaData.getDatabaseProductName() 确定方言
+     */
+    public static Dialect of(String databaseProductName) {
+        String name = String.valueOf(databaseProductName).toLowerCase();
+        if (name.contains("mysql") || name.contains("mariadb")) {
+            return MYSQL;
+        }
+        if (name.contains("h2")) {
+            return H2;
+        }
+        return STANDARD;
+    }
+}
@@ -0,0 +1,100 @@
+package com.wp.common;
+
+import com.wp.utils.DbUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 实体游标，逐行读取结果集并延迟映射为对象
+ * 游标占用一个数据库连接，读取完毕或调用 close 后释放，建议配合 try-with-resources 使用
+ * @author 翁鹏
+ */
+public class EntityCursor<T> implements Iterator<T>, AutoCloseable {
+
+    private final Connection connection;
+
+    private final PreparedStatement statement;
+
+    private final ResultSet resultSet;
+
+    private final RowMapper<T> rowMapper;
+
+    /**
+     * 是否已经读取了下一行
+     */
+    private boolean hasNextRow;
+
+    /**
+     * 是否已经移动过游标
+     */
+    private boolean advanced;
+
+    private boolean closed;
+
+    public EntityCursor(Class<T> clazz, Connection connection, PreparedStatement statement, ResultSet resultSet) throws SQLException {
+        this.connection = connection;
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.rowMapper = RowMapper.of(clazz, resultSet.getMetaData());
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!advanced) {
+            try {
+                hasNextRow = resultSet.next();
+            } catch (SQLException e) {
+                close();
+                throw new IllegalStateException("读取结果集失败", e);
+            }
+            advanced = true;
+            if (!hasNextRow) {
+                // 读取完毕，释放连接
+                close();
+            }
+        }
+        return hasNextRow;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        advanced = false;
+        try {
+            return rowMapper.mapRow(resultSet);
+        } catch (SQLException e) {
+            close();
+            throw new IllegalStateException("读取结果集失败", e);
+        }
+    }
+
+    /**
+     * 转换为顺序流，关闭流时释放连接
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            DbUtil.closeConnection(connection, statement, resultSet);
+        }
+    }
+}
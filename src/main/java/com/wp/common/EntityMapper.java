@@ -0,0 +1,39 @@
+package com.wp.common;
+
+/**
+ * 实体映射器，由 SimpleORM 注解处理器在编译期为实体类生成（类名为 实体类名_EntityMapper，与实体类在同一个包中）
+ * 生成的代码直接读写字段、直接 new 对象，不使用反射；运行时存在时 AnnotationParser 会自动使用，否则退回到反射
+ * @author 翁鹏
+ */
+public interface EntityMapper<T> {
+
+    /**
+     * 生成类名的后缀
+     */
+    String SUFFIX = "_EntityMapper";
+
+    /**
+     * 创建实体对象
+     */
+    T newInstance();
+
+    /**
+     * 按声明顺序返回所有字段名，get/set 的下标与该顺序一致
+     */
+    String[] fieldNames();
+
+    /**
+     * 按声明顺序读取所有字段的值
+     */
+    Object[] readValues(T entity);
+
+    /**
+     * 读取下标对应字段的值
+     */
+    Object get(T entity, int index);
+
+    /**
+     * 设置下标对应字段的值，基本类型字段传入null时忽略
+     */
+    void set(T entity, int index, Object value);
+}
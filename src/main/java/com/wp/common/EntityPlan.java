@@ -0,0 +1,1089 @@
+package com.wp.common;
+
+import com.wp.annotation.Cacheable;
+import com.wp.annotation.SequenceBlock;
+import com.wp.cache.EntityCache;
+import com.wp.type.TypedValue;
+import com.wp.utils.ReflectUtil;
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体语句计划（每个实体类只构建一次）
+ * 预先拼好 insert / update / delete / selectById 的sql以及参数绑定顺序，
+ * 执行时只需要按顺序读取字段值并绑定参数。
+ * 跳过空值的insert/update/delete通过"空值掩码"缓存少量的sql变体。
+ * @author 翁鹏
+ */
+public class EntityPlan {
+
+    /**
+     * 每种语句最多缓存的sql变体数量
+     */
+    private static final int MAX_SHAPES = 64;
+
+    /**
+     * 空值掩码能表示的最大列数
+     */
+    private static final int MAX_MASK_COLUMNS = 64;
+
+    /**
+     * 实体类
+     */
+    private final Class<?> entityClass;
+
+    /**
+     * 表名
+     */
+    private final String tableName;
+
+    /**
+     * 所有字段（参数绑定顺序）
+     */
+    private final ColumnInfo[] columns;
+
+    /**
+     * 主键字段在 columns 中的下标
+     */
+    private final int[] primaryKeyIndexes;
+
+    /**
+     * 延迟加载的字段，以及其中 Lazy 类型的字段
+     */
+    private final ColumnInfo[] lazyColumns;
+    private final ColumnInfo[] lazyHolderColumns;
+    private final int[] lazyHolderIndexes;
+
+    /**
+     * 类字段名和字段信息的映射关系
+     */
+    private final Map<String, ColumnInfo> columnByField = new HashMap<>();
+
+    /**
+     * 表字段名和字段信息的映射关系
+     */
+    private final Map<String, ColumnInfo> columnByName = new HashMap<>();
+
+    /**
+     * 小写表字段名和字段信息的映射关系（部分数据库返回大写列名）
+     */
+    private final Map<String, ColumnInfo> columnByLowerName = new HashMap<>();
+
+    /**
+     * 全部字段的sql
+     */
+    private final String insertSql;
+    private final String updateSql;
+    private final String deleteSql;
+    private final String selectByIdSql;
+    private final String selectAllSql;
+
+    /**
+     * 按主键顺序分页（keyset）的sql：第一页和指定起始主键之后的页，没有主键时为null
+     */
+    private final String firstPageSql;
+    private final String nextPageSql;
+
+    /**
+     * 并行扫描的sql：查询主键的最小值和最大值、按主键范围查询，不是单一主键时为null
+     */
+    private final String keyBoundsSql;
+    private final String keyRangeSql;
+
+    /**
+     * 以空值掩码为key的sql变体缓存
+     */
+    private final Map<Long, String> insertShapes = new ConcurrentHashMap<>();
+    private final Map<Long, String> updateShapes = new ConcurrentHashMap<>();
+    private final Map<Long, String> deleteShapes = new ConcurrentHashMap<>();
+
+    /**
+     * 各方言的upsert语句变体缓存
+     */
+    private final Map<Dialect, Map<Long, String>> upsertShapes = new EnumMap<>(Dialect.class);
+
+    /**
+     * 多行insert语句缓存，key为 单行insert语句 + 行数
+     */
+    private final Map<String, String> multiRowInsertShapes = new ConcurrentHashMap<>();
+
+    /**
+     * 按字段批量查询的sql缓存，key为 查询语句 + 表字段名 + 参数个数
+     */
+    private final Map<String, String> selectInShapes = new ConcurrentHashMap<>();
+
+    /**
+     * 投影查询的sql缓存，key为投影类或字段名列表
+     */
+    private final Map<Object, Projection> projections = new ConcurrentHashMap<>();
+
+    /**
+     * 编译期生成的实体映射器，没有时为null
+     */
+    @SuppressWarnings("rawtypes")
+    private final EntityMapper entityMapper;
+
+    /**
+     * 生成的映射器字段顺序与 columns 一致时，readValues 直接使用映射器一次读取所有字段
+     */
+    private final boolean mapperReadsValues;
+
+    /**
+     * 二级缓存，实体类没有 @Cacheable 注解或不是单一主键时为null
+     */
+    private final EntityCache entityCache;
+
+    /**
+     * 号段主键分配器，实体类没有 @SequenceBlock 注解或不是单一主键时为null
+     */
+    private final SequenceAllocator sequenceAllocator;
+
+    public EntityPlan(Class<?> entityClass, String tableName, List<ColumnInfo> columnInfoList) {
+        this(entityClass, tableName, columnInfoList, null);
+    }
+
+    /**
+     * 分片的物理表使用的语句计划，二级缓存和号段主键分配器与逻辑表共用
+     */
+    public EntityPlan(EntityPlan logicalPlan, String tableName) {
+        this(logicalPlan.entityClass, tableName, Arrays.asList(logicalPlan.columns), logicalPlan);
+    }
+
+    private EntityPlan(Class<?> entityClass, String tableName, List<ColumnInfo> columnInfoList, EntityPlan logicalPlan) {
+        this.entityClass = entityClass;
+        this.tableName = tableName;
+        this.columns = columnInfoList.toArray(new ColumnInfo[0]);
+        List<Integer> pkIndexes = new ArrayList<>();
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].isPrimaryKey()) {
+                pkIndexes.add(i);
+            }
+            columnByField.put(columns[i].getFieldName(), columns[i]);
+            columnByName.put(columns[i].getColumnName(), columns[i]);
+            columnByLowerName.put(columns[i].getColumnName().toLowerCase(), columns[i]);
+        }
+        this.primaryKeyIndexes = new int[pkIndexes.size()];
+        for (int i = 0; i < primaryKeyIndexes.length; i++) {
+            primaryKeyIndexes[i] = pkIndexes.get(i);
+        }
+        List<ColumnInfo> lazyList = new ArrayList<>();
+        List<ColumnInfo> lazyHolderList = new ArrayList<>();
+        List<Integer> lazyHolderIndexList = new ArrayList<>();
+        for (int i = 0; i < columns.length; i++) {
+            ColumnInfo column = columns[i];
+            if (column.isLazy()) {
+                if (column.isPrimaryKey() || primaryKeyIndexes.length != 1) {
+                    throw new IllegalStateException("表[" + tableName + "]使用延迟加载字段时需要有且只有一个主键，并且主键不能延迟加载");
+                }
+                lazyList.add(column);
+                if (column.getAccessor() instanceof LazyFieldAccessor) {
+                    lazyHolderList.add(column);
+                    lazyHolderIndexList.add(i);
+                }
+            }
+        }
+        this.lazyColumns = lazyList.toArray(new ColumnInfo[0]);
+        this.lazyHolderColumns = lazyHolderList.toArray(new ColumnInfo[0]);
+        this.lazyHolderIndexes = new int[lazyHolderIndexList.size()];
+        for (int i = 0; i < lazyHolderIndexes.length; i++) {
+            lazyHolderIndexes[i] = lazyHolderIndexList.get(i);
+        }
+        for (Dialect dialect : Dialect.values()) {
+            upsertShapes.put(dialect, new ConcurrentHashMap<>());
+        }
+        this.insertSql = buildInsertSql(0L);
+        this.updateSql = primaryKeyIndexes.length == 0 || primaryKeyIndexes.length == columns.length
+                ? null : buildUpdateSql(0L);
+        this.deleteSql = primaryKeyIndexes.length == 0 ? null : buildDeleteSql(0L);
+        this.selectAllSql = lazyColumns.length == 0 ? "select * from " + tableName : buildEagerSelectSql();
+        this.selectByIdSql = primaryKeyIndexes.length == 0 ? null : selectAllSql + " where " + buildWhere(0L);
+        this.firstPageSql = primaryKeyIndexes.length == 0 ? null : selectAllSql + buildPageSuffix();
+        this.nextPageSql = primaryKeyIndexes.length == 0 ? null : selectAllSql + " where " + buildKeysetWhere() + buildPageSuffix();
+        String keyColumn = primaryKeyIndexes.length == 1 ? columns[primaryKeyIndexes[0]].getColumnName() : null;
+        this.keyBoundsSql = keyColumn == null ? null
+                : "select min(" + keyColumn + ") as min_key, max(" + keyColumn + ") as max_key from " + tableName;
+        this.keyRangeSql = keyColumn == null ? null
+                : selectAllSql + " where " + keyColumn + " >= ? and " + keyColumn + " <= ?";
+        if (columns.length <= MAX_MASK_COLUMNS) {
+            insertShapes.put(0L, insertSql);
+            if (updateSql != null) {
+                updateShapes.put(0L, updateSql);
+            }
+            if (deleteSql != null) {
+                deleteShapes.put(0L, deleteSql);
+            }
+        }
+        this.entityMapper = AnnotationParser.getEntityMapper(entityClass);
+        // 映射器一次读取的是 Lazy 对象本身，有 Lazy 字段时逐个字段读取
+        this.mapperReadsValues = entityMapper != null && lazyHolderColumns.length == 0 && sameFieldOrder(entityMapper.fieldNames());
+        if (logicalPlan != null) {
+            this.entityCache = logicalPlan.entityCache;
+            this.sequenceAllocator = logicalPlan.sequenceAllocator;
+            return;
+        }
+        Cacheable cacheable = entityClass.getAnnotation(Cacheable.class);
+        this.entityCache = cacheable != null && primaryKeyIndexes.length == 1
+                ? new EntityCache(cacheable.maxSize(), cacheable.ttlSeconds()) : null;
+        SequenceBlock sequenceBlock = entityClass.getAnnotation(SequenceBlock.class);
+        this.sequenceAllocator = sequenceBlock != null && primaryKeyIndexes.length == 1
+                ? new SequenceAllocator(StringUtils.isNotBlank(sequenceBlock.value()) ? sequenceBlock.value() : tableName,
+                        sequenceBlock.blockSize(), sequenceBlock.initialValue())
+                : null;
+    }
+
+    /**
+     * 查询所有非延迟加载字段的sql
+     */
+    private String buildEagerSelectSql() {
+        List<String> selectList = new ArrayList<>();
+        for (ColumnInfo column : columns) {
+            if (!column.isLazy()) {
+                selectList.add(column.getColumnName());
+            }
+        }
+        return "select " + String.join(",", selectList) + " from " + tableName;
+    }
+
+    /**
+     * 判断生成的映射器字段顺序是否与 columns 一致
+     */
+    private boolean sameFieldOrder(String[] fieldNames) {
+        if (fieldNames.length != columns.length) {
+            return false;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (!columns[i].getFieldName().equals(fieldNames[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 创建实体对象，有生成的映射器时直接 new，否则使用反射
+     */
+    public Object newInstance() {
+        return entityMapper != null ? entityMapper.newInstance() : ReflectUtil.newInstance(entityClass);
+    }
+
+    /**
+     * 按绑定顺序读取对象所有字段的值
+     */
+    @SuppressWarnings("unchecked")
+    public Object[] readValues(Object dao) {
+        if (mapperReadsValues) {
+            return entityMapper.readValues(dao);
+        }
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = columns[i].getAccessor().get(dao);
+        }
+        return values;
+    }
+
+    /**
+     * 根据字段值创建新的对象
+     */
+    public Object newEntity(Object[] values) {
+        Object dao = newInstance();
+        for (int i = 0; i < columns.length; i++) {
+            if (values[i] != null) {
+                columns[i].getAccessor().set(dao, values[i]);
+            }
+        }
+        initLazy(dao);
+        return dao;
+    }
+
+    /**
+     * 为没有值的 Lazy 字段设置按主键查询的加载方法
+     * 加载后将值合并到脏检查快照中，避免加载的值被当作修改在下次更新时写回
+     */
+    public void initLazy(Object dao) {
+        for (int i = 0; i < lazyHolderColumns.length; i++) {
+            ColumnInfo column = lazyHolderColumns[i];
+            int index = lazyHolderIndexes[i];
+            LazyFieldAccessor accessor = (LazyFieldAccessor) column.getAccessor();
+            if (accessor.holder(dao) == null) {
+                FieldAccessor idAccessor = columns[primaryKeyIndexes[0]].getAccessor();
+                accessor.set(dao, new Lazy<>(() -> {
+                    Object value = LazyLoader.load(this, column, idAccessor.get(dao));
+                    EntitySnapshots.merge(dao, index, value);
+                    return value;
+                }));
+            }
+        }
+    }
+
+    /**
+     * 是否有 Lazy 类型的字段
+     */
+    public boolean hasLazyHolders() {
+        return lazyHolderColumns.length > 0;
+    }
+
+    /**
+     * 延迟加载的字段
+     */
+    public ColumnInfo[] getLazyColumns() {
+        return lazyColumns;
+    }
+
+    /**
+     * 获取单一主键的值，不是单一主键时返回null
+     */
+    public Object getPrimaryKeyValue(Object[] values) {
+        return primaryKeyIndexes.length == 1 ? values[primaryKeyIndexes[0]] : null;
+    }
+
+    /**
+     * 判断insert是否需要数据库生成主键：单一主键且主键值为空
+     */
+    public boolean needsGeneratedKey(Object[] values) {
+        return primaryKeyIndexes.length == 1 && values[primaryKeyIndexes[0]] == null;
+    }
+
+    /**
+     * 将数据库生成或预先分配的主键转换为字段类型后写入对象，并同步到字段值中
+     */
+    public void setPrimaryKeyValue(Object dao, Object[] values, Object key) {
+        ColumnInfo columnInfo = columns[primaryKeyIndexes[0]];
+        Object value = convertKey(key, columnInfo.getFieldType());
+        columnInfo.getAccessor().set(dao, value);
+        values[primaryKeyIndexes[0]] = value;
+    }
+
+    private Object convertKey(Object key, Class<?> type) {
+        if (key == null || type.isInstance(key)) {
+            return key;
+        }
+        if (type == String.class) {
+            return key.toString();
+        }
+        if (!(key instanceof Number)) {
+            throw new IllegalStateException("无法将表[" + tableName + "]的主键值[" + key + "]转换为" + type.getName());
+        }
+        Number number = (Number) key;
+        if (type == Long.class || type == long.class) {
+            return number.longValue();
+        }
+        if (type == Integer.class || type == int.class) {
+            return Math.toIntExact(number.longValue());
+        }
+        if (type == Short.class || type == short.class) {
+            return (short) Math.toIntExact(number.longValue());
+        }
+        if (type == BigInteger.class) {
+            return number instanceof BigDecimal ? ((BigDecimal) number).toBigInteger() : BigInteger.valueOf(number.longValue());
+        }
+        if (type == BigDecimal.class) {
+            return number instanceof BigInteger ? new BigDecimal((BigInteger) number) : new BigDecimal(number.toString());
+        }
+        throw new IllegalStateException("无法将表[" + tableName + "]的主键值[" + key + "]转换为" + type.getName());
+    }
+
+    /**
+     * 计算空值掩码，第i位为1表示第i个字段为空
+     * 字段数超过64时返回-1，表示不缓存sql
+     */
+    public long nullMask(Object[] values) {
+        if (values.length > MAX_MASK_COLUMNS) {
+            return -1L;
+        }
+        long mask = 0L;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 获取跳过空值的insert语句
+     */
+    public String getInsertSql(Object[] values) {
+        long mask = nullMask(values);
+        if (mask == -1L) {
+            return buildInsertSql(values);
+        }
+        String sql = insertShapes.get(mask);
+        if (sql == null) {
+            sql = buildInsertSql(mask);
+            cacheShape(insertShapes, mask, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 将单行insert语句改写为多行 values 列表
+     * 例如 insert into user(id,name) values(?,?) 改写为 insert into user(id,name) values(?,?),(?,?)
+     */
+    public String getMultiRowInsertSql(String insertSql, int rows) {
+        if (rows == 1) {
+            return insertSql;
+        }
+        String key = insertSql + "#" + rows;
+        String sql = multiRowInsertShapes.get(key);
+        if (sql == null) {
+            int index = insertSql.lastIndexOf(" values") + " values".length();
+            String tuple = insertSql.substring(index);
+            StringBuilder builder = new StringBuilder(index + rows * (tuple.length() + 1));
+            builder.append(insertSql, 0, index).append(tuple);
+            for (int i = 1; i < rows; i++) {
+                builder.append(",").append(tuple);
+            }
+            sql = builder.toString();
+            if (multiRowInsertShapes.size() < MAX_SHAPES) {
+                multiRowInsertShapes.putIfAbsent(key, sql);
+            }
+        }
+        return sql;
+    }
+
+    /**
+     * 获取insert语句的参数（跳过空值）
+     */
+    public Object[] getInsertParams(Object[] values) {
+        int count = 0;
+        for (Object value : values) {
+            if (value != null) {
+                count++;
+            }
+        }
+        Object[] params = new Object[count];
+        int index = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                params[index++] = param(i, values[i]);
+            }
+        }
+        return params;
+    }
+
+    /**
+     * 获取跳过空值的插入或更新语句，参数与 getInsertParams 相同
+     * 主键的所有字段都不能为空，已存在的行只更新非空的非主键字段
+     */
+    public String getUpsertSql(Dialect dialect, Object[] values) {
+        if (primaryKeyIndexes.length == 0) {
+            throw new IllegalStateException("没有找到表[" + tableName + "]中的主键");
+        }
+        for (int index : primaryKeyIndexes) {
+            if (values[index] == null) {
+                throw new IllegalStateException("没有找到表[" + tableName + "]中的主键值");
+            }
+        }
+        long mask = nullMask(values);
+        if (mask == -1L) {
+            return buildUpsertSql(dialect, values);
+        }
+        Map<Long, String> shapes = upsertShapes.get(dialect);
+        String sql = shapes.get(mask);
+        if (sql == null) {
+            sql = buildUpsertSql(dialect, values);
+            cacheShape(shapes, mask, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 脏检查：与加载时的快照（字段值的指纹）比较，只保留发生变化的非空字段和主键，其余字段置为null
+     * @return 没有字段变化时返回null
+     */
+    public Object[] dirtyValues(Object[] values, Object[] snapshot) {
+        Object[] changed = new Object[values.length];
+        boolean dirty = false;
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].isPrimaryKey()) {
+                changed[i] = values[i];
+            } else if (values[i] != null && !Objects.equals(EntitySnapshots.fingerprint(values[i]), snapshot[i])) {
+                changed[i] = values[i];
+                dirty = true;
+            }
+        }
+        return dirty ? changed : null;
+    }
+
+    /**
+     * 合并快照：非空字段以当前值为准，空字段保留快照中的值
+     */
+    public Object[] mergeSnapshot(Object[] snapshot, Object[] values) {
+        Object[] merged = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            merged[i] = values[i] != null ? values[i] : snapshot[i];
+        }
+        return merged;
+    }
+
+    /**
+     * 复制字段值，Date、Calendar 和数组等可变的值复制一份，避免与对象共享后被原地修改
+     */
+    public static Object[] copyValues(Object[] values) {
+        Object[] copy = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            copy[i] = copyValue(values[i]);
+        }
+        return copy;
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        if (value instanceof Calendar) {
+            return ((Calendar) value).clone();
+        }
+        if (value != null && value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * 获取update语句中set的表字段名
+     */
+    public List<String> getSetColumnNames(Object[] values) {
+        List<String> columnNames = new ArrayList<>();
+        for (int i = 0; i < columns.length; i++) {
+            if (!columns[i].isPrimaryKey() && values[i] != null) {
+                columnNames.add(columns[i].getColumnName());
+            }
+        }
+        return columnNames;
+    }
+
+    /**
+     * 获取跳过空值的update语句
+     */
+    public String getUpdateSql(Object[] values) {
+        checkPrimaryKeyValues(values);
+        long mask = nullMask(values);
+        if (mask == -1L) {
+            return buildUpdateSql(values);
+        }
+        String sql = updateShapes.get(mask);
+        if (sql == null) {
+            sql = buildUpdateSql(mask);
+            cacheShape(updateShapes, mask, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 获取update语句的参数：先set字段，再where主键
+     */
+    public Object[] getUpdateParams(Object[] values) {
+        List<Object> params = new ArrayList<>(values.length);
+        for (int i = 0; i < columns.length; i++) {
+            if (!columns[i].isPrimaryKey() && values[i] != null) {
+                params.add(param(i, values[i]));
+            }
+        }
+        for (int index : primaryKeyIndexes) {
+            if (values[index] != null) {
+                params.add(param(index, values[index]));
+            }
+        }
+        return params.toArray();
+    }
+
+    /**
+     * 获取按主键删除的delete语句
+     */
+    public String getDeleteSql(Object[] values) {
+        checkPrimaryKeyValues(values);
+        long mask = nullMask(values);
+        if (mask == -1L) {
+            return "delete from " + tableName + " where " + buildWhere(values);
+        }
+        String sql = deleteShapes.get(mask);
+        if (sql == null) {
+            sql = buildDeleteSql(mask);
+            cacheShape(deleteShapes, mask, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 获取where主键的参数
+     */
+    public Object[] getPrimaryKeyParams(Object[] values) {
+        List<Object> params = new ArrayList<>(primaryKeyIndexes.length);
+        for (int index : primaryKeyIndexes) {
+            if (values[index] != null) {
+                params.add(param(index, values[index]));
+            }
+        }
+        return params.toArray();
+    }
+
+    /**
+     * 字段通过 @Column 注解指定了类型处理器时，参数包装为 TypedValue，绑定时使用该处理器
+     */
+    private Object param(int index, Object value) {
+        return columns[index].isExplicitTypeHandler() ? new TypedValue(value, columns[index].getTypeHandler()) : value;
+    }
+
+    /**
+     * 获取分页查询的参数
+     * @param afterKey 上一页最后一行的主键，单一主键时为主键值，联合主键时为按主键字段顺序的数组，第一页为null
+     */
+    public Object[] getPageParams(Object afterKey, int limit) {
+        if (afterKey == null) {
+            return new Object[]{limit};
+        }
+        Object[] key = toKeyArray(afterKey);
+        List<Object> params = new ArrayList<>();
+        if (key.length > 1) {
+            // 首个主键字段的范围条件，便于使用索引
+            params.add(key[0]);
+        }
+        for (int i = 0; i < key.length; i++) {
+            params.addAll(Arrays.asList(key).subList(0, i + 1));
+        }
+        params.add(limit);
+        return params.toArray();
+    }
+
+    /**
+     * 获取对象的主键，单一主键时为主键值，联合主键时为按主键字段顺序的数组
+     */
+    public Object getKey(Object dao) {
+        if (primaryKeyIndexes.length == 1) {
+            return columns[primaryKeyIndexes[0]].getAccessor().get(dao);
+        }
+        Object[] key = new Object[primaryKeyIndexes.length];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = columns[primaryKeyIndexes[i]].getAccessor().get(dao);
+        }
+        return key;
+    }
+
+    private Object[] toKeyArray(Object key) {
+        Object[] keyArray = primaryKeyIndexes.length == 1 && !(key instanceof Object[])
+                ? new Object[]{key} : (Object[]) key;
+        if (keyArray.length != primaryKeyIndexes.length) {
+            throw new IllegalStateException("表[" + tableName + "]的主键有" + primaryKeyIndexes.length
+                    + "个字段，分页起始主键有" + keyArray.length + "个值");
+        }
+        for (Object value : keyArray) {
+            if (value == null) {
+                throw new IllegalStateException("表[" + tableName + "]的分页起始主键中不能有空值");
+            }
+        }
+        return keyArray;
+    }
+
+    /**
+     * 获取投影到 projectionClass 的查询语句
+     * 投影类的每个字段按字段名（其次按表字段名）对应到实体类的字段，表字段名不同时使用别名
+     */
+    public Projection getProjection(Class<?> projectionClass) {
+        Projection projection = projections.get(projectionClass);
+        if (projection == null) {
+            List<String> selectList = new ArrayList<>();
+            for (ColumnInfo target : AnnotationParser.getColumnsInfo(projectionClass)) {
+                ColumnInfo source = columnByField.get(target.getFieldName());
+                if (source == null) {
+                    source = getColumnByName(target.getColumnName());
+                }
+                if (source == null) {
+                    throw new IllegalStateException("表[" + tableName + "]中没有与["
+                            + projectionClass.getName() + "." + target.getFieldName() + "]对应的字段");
+                }
+                selectList.add(source.getColumnName().equals(target.getColumnName())
+                        ? source.getColumnName() : source.getColumnName() + " as " + target.getColumnName());
+            }
+            projection = cacheProjection(projectionClass, selectList);
+        }
+        return projection;
+    }
+
+    /**
+     * 获取只查询部分字段的查询语句
+     */
+    public Projection getProjection(String... fieldNames) {
+        List<String> key = Arrays.asList(fieldNames);
+        Projection projection = projections.get(key);
+        if (projection == null) {
+            List<String> selectList = new ArrayList<>();
+            for (String fieldName : fieldNames) {
+                ColumnInfo columnInfo = columnByField.get(fieldName);
+                if (columnInfo == null) {
+                    throw new IllegalStateException("表[" + tableName + "]中没有与字段[" + fieldName + "]对应的字段");
+                }
+                selectList.add(columnInfo.getColumnName());
+            }
+            projection = cacheProjection(key, selectList);
+        }
+        return projection;
+    }
+
+    private Projection cacheProjection(Object key, List<String> selectList) {
+        if (selectList.isEmpty()) {
+            throw new IllegalStateException("表[" + tableName + "]的投影查询没有需要查询的字段");
+        }
+        String selectSql = "select " + String.join(",", selectList) + " from " + tableName;
+        String byIdSql = primaryKeyIndexes.length == 0 ? null : selectSql + " where " + buildWhere(0L);
+        Projection projection = new Projection(selectSql, byIdSql);
+        if (projections.size() < MAX_SHAPES) {
+            projections.putIfAbsent(key, projection);
+        }
+        return projection;
+    }
+
+    /**
+     * 检查主键及主键值是否存在
+     */
+    private void checkPrimaryKeyValues(Object[] values) {
+        if (primaryKeyIndexes.length == 0) {
+            throw new IllegalStateException("没有找到表[" + tableName + "]中的主键");
+        }
+        for (int index : primaryKeyIndexes) {
+            if (values[index] != null) {
+                return;
+            }
+        }
+        throw new IllegalStateException("没有找到表[" + tableName + "]中的主键值");
+    }
+
+    private void cacheShape(Map<Long, String> shapes, long mask, String sql) {
+        if (shapes.size() < MAX_SHAPES) {
+            shapes.putIfAbsent(mask, sql);
+        }
+    }
+
+    private boolean isNull(long mask, int index) {
+        return (mask & (1L << index)) != 0;
+    }
+
+    private String buildInsertSql(long mask) {
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = isNull(mask, i) ? null : Boolean.TRUE;
+        }
+        return buildInsertSql(values);
+    }
+
+    private String buildInsertSql(Object[] values) {
+        StringBuilder columnsSql = new StringBuilder();
+        StringBuilder valuesSql = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (values[i] != null) {
+                columnsSql.append(columns[i].getColumnName()).append(",");
+                valuesSql.append("?,");
+            }
+        }
+        if (columnsSql.length() == 0) {
+            throw new IllegalStateException("没有找到表[" + tableName + "]中需要保存的字段");
+        }
+        // 删除最后一个逗号
+        columnsSql.deleteCharAt(columnsSql.length() - 1);
+        valuesSql.deleteCharAt(valuesSql.length() - 1);
+        return "insert into " + tableName + "(" + columnsSql + ") values(" + valuesSql + ")";
+    }
+
+    private String buildUpdateSql(long mask) {
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = isNull(mask, i) ? null : Boolean.TRUE;
+        }
+        return buildUpdateSql(values);
+    }
+
+    private String buildUpdateSql(Object[] values) {
+        StringBuilder set = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (!columns[i].isPrimaryKey() && values[i] != null) {
+                set.append(columns[i].getColumnName()).append(" = ?,");
+            }
+        }
+        if (set.length() == 0) {
+            throw new IllegalStateException("没有找到表[" + tableName + "]中的需要更新的字段");
+        }
+        // 删除最后一个逗号
+        set.deleteCharAt(set.length() - 1);
+        return "update " + tableName + " set " + set + " where " + buildWhere(values);
+    }
+
+    private String buildDeleteSql(long mask) {
+        return "delete from " + tableName + " where " + buildWhere(mask);
+    }
+
+    private String buildWhere(long mask) {
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = isNull(mask, i) ? null : Boolean.TRUE;
+        }
+        return buildWhere(values);
+    }
+
+    private String buildUpsertSql(Dialect dialect, Object[] values) {
+        List<String> names = new ArrayList<>();
+        List<String> updateNames = new ArrayList<>();
+        List<String> keyNames = new ArrayList<>();
+        for (int i = 0; i < columns.length; i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            names.add(columns[i].getColumnName());
+            if (columns[i].isPrimaryKey()) {
+                keyNames.add(columns[i].getColumnName());
+            } else {
+                updateNames.add(columns[i].getColumnName());
+            }
+        }
+        String columnList = String.join(",", names);
+        String placeholders = String.join(",", Collections.nCopies(names.size(), "?"));
+        StringBuilder sql = new StringBuilder();
+        switch (dialect) {
+            case MYSQL:
+                sql.append("insert into ").append(tableName).append("(").append(columnList)
+                        .append(") values(").append(placeholders).append(") on duplicate key update ");
+                if (updateNames.isEmpty()) {
+                    // 只有主键时保持原值，忽略重复
+                    sql.append(keyNames.get(0)).append(" = ").append(keyNames.get(0));
+                }
+                for (int i = 0; i < updateNames.size(); i++) {
+                    sql.append(i == 0 ? "" : ",").append(updateNames.get(i))
+                            .append(" = values(").append(updateNames.get(i)).append(")");
+                }
+                break;
+            case H2:
+                sql.append("merge into ").append(tableName).append("(").append(columnList)
+                        .append(") key(").append(String.join(",", keyNames))
+                        .append(") values(").append(placeholders).append(")");
+                break;
+            default:
+                sql.append("merge into ").append(tableName).append(" t using (values(").append(placeholders)
+                        .append(")) s(").append(columnList).append(") on (");
+                for (int i = 0; i < keyNames.size(); i++) {
+                    sql.append(i == 0 ? "" : " and ").append("t.").append(keyNames.get(i))
+                            .append(" = s.").append(keyNames.get(i));
+                }
+                sql.append(")");
+                if (!updateNames.isEmpty()) {
+                    sql.append(" when matched then update set ");
+                    for (int i = 0; i < updateNames.size(); i++) {
+                        sql.append(i == 0 ? "" : ",").append(updateNames.get(i))
+                                .append(" = s.").append(updateNames.get(i));
+                    }
+                }
+                sql.append(" when not matched then insert(").append(columnList).append(") values(");
+                for (int i = 0; i < names.size(); i++) {
+                    sql.append(i == 0 ? "" : ",").append("s.").append(names.get(i));
+                }
+                sql.append(")");
+                break;
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 主键大于起始主键的条件，联合主键展开为 a > ? or (a = ? and b > ?) ...
+     */
+    private String buildKeysetWhere() {
+        StringBuilder where = new StringBuilder();
+        if (primaryKeyIndexes.length > 1) {
+            where.append(columns[primaryKeyIndexes[0]].getColumnName()).append(" >= ? and (");
+        }
+        for (int i = 0; i < primaryKeyIndexes.length; i++) {
+            where.append(i == 0 ? "" : " or ").append(primaryKeyIndexes.length > 1 ? "(" : "");
+            for (int j = 0; j < i; j++) {
+                where.append(columns[primaryKeyIndexes[j]].getColumnName()).append(" = ? and ");
+            }
+            where.append(columns[primaryKeyIndexes[i]].getColumnName()).append(" > ?")
+                    .append(primaryKeyIndexes.length > 1 ? ")" : "");
+        }
+        if (primaryKeyIndexes.length > 1) {
+            where.append(")");
+        }
+        return where.toString();
+    }
+
+    private String buildPageSuffix() {
+        StringBuilder orderBy = new StringBuilder(" order by ");
+        for (int index : primaryKeyIndexes) {
+            orderBy.append(columns[index].getColumnName()).append(',');
+        }
+        orderBy.deleteCharAt(orderBy.length() - 1);
+        return orderBy.append(" limit ?").toString();
+    }
+
+    private String buildWhere(Object[] values) {
+        StringBuilder where = new StringBuilder();
+        for (int index : primaryKeyIndexes) {
+            if (values[index] != null) {
+                where.append(columns[index].getColumnName()).append(" = ? and ");
+            }
+        }
+        // 删除多余的and
+        where.delete(where.length() - 5, where.length());
+        return where.toString();
+    }
+
+    /**
+     * 分页查询的sql，没有主键时为null
+     * @param afterKey 上一页最后一行的主键，第一页为null
+     */
+    public String getPageSql(Object afterKey) {
+        return afterKey == null ? firstPageSql : nextPageSql;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * 二级缓存，未开启时为null
+     */
+    public EntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * 号段主键分配器，未开启时为null
+     */
+    public SequenceAllocator getSequenceAllocator() {
+        return sequenceAllocator;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public ColumnInfo[] getColumns() {
+        return columns;
+    }
+
+    public int[] getPrimaryKeyIndexes() {
+        return primaryKeyIndexes;
+    }
+
+    /**
+     * 根据类字段名获取字段信息，不存在时返回null
+     */
+    public ColumnInfo getColumnByField(String fieldName) {
+        return columnByField.get(fieldName);
+    }
+
+    /**
+     * 根据表字段名获取字段信息（忽略大小写），不存在时返回null
+     */
+    public ColumnInfo getColumnByName(String columnName) {
+        ColumnInfo columnInfo = columnByName.get(columnName);
+        return columnInfo != null ? columnInfo : columnByLowerName.get(columnName.toLowerCase());
+    }
+
+    /**
+     * 全部字段的insert语句
+     */
+    public String getInsertSql() {
+        return insertSql;
+    }
+
+    /**
+     * 全部字段的update语句，没有主键或没有非主键字段时为null
+     */
+    public String getUpdateSql() {
+        return updateSql;
+    }
+
+    /**
+     * 按主键删除的delete语句，没有主键时为null
+     */
+    public String getDeleteSql() {
+        return deleteSql;
+    }
+
+    /**
+     * 按主键查询的select语句，没有主键时为null
+     */
+    public String getSelectByIdSql() {
+        return selectByIdSql;
+    }
+
+    public String getSelectAllSql() {
+        return selectAllSql;
+    }
+
+    /**
+     * 查询主键最小值和最大值的sql，不是单一主键时为null
+     */
+    public String getKeyBoundsSql() {
+        return keyBoundsSql;
+    }
+
+    /**
+     * 按主键范围（两端都包含）查询的sql，不是单一主键时为null
+     */
+    public String getKeyRangeSql() {
+        return keyRangeSql;
+    }
+
+    /**
+     * 按字段批量查询的select语句：select ... where column in (?, ?, ...)
+     * @param count 参数个数，调用方应将个数对齐（例如补齐到2的幂），避免产生过多不同的sql
+     */
+    public String getSelectInSql(ColumnInfo column, int count) {
+        return getSelectInSql(selectAllSql, column, count);
+    }
+
+    /**
+     * 按字段批量查询的select语句
+     * @param selectSql 不带条件的查询语句，例如投影查询的sql
+     */
+    public String getSelectInSql(String selectSql, ColumnInfo column, int count) {
+        return selectInShapes.computeIfAbsent(selectSql + ":" + column.getColumnName() + ":" + count, key -> {
+            StringBuilder sql = new StringBuilder(selectSql).append(" where ").append(column.getColumnName()).append(" in (");
+            for (int i = 0; i < count; i++) {
+                sql.append(i == 0 ? "?" : ",?");
+            }
+            return sql.append(")").toString();
+        });
+    }
+
+    /**
+     * 投影查询语句
+     */
+    public static final class Projection {
+
+        private final String selectSql;
+
+        private final String selectByIdSql;
+
+        Projection(String selectSql, String selectByIdSql) {
+            this.selectSql = selectSql;
+            this.selectByIdSql = selectByIdSql;
+        }
+
+        public String getSelectSql() {
+            return selectSql;
+        }
+
+        /**
+         * 按主键查询的语句，没有主键时为null
+         */
+        public String getSelectByIdSql() {
+            return selectByIdSql;
+        }
+    }
+}
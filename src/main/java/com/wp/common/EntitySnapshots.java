@@ -0,0 +1,177 @@
+package com.wp.common;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体快照，记录通过 selectById / select / page 等按条件加载的对象在加载时每个字段的指纹，用于脏检查
+ * 按对象身份（而不是 equals/hashCode）弱引用保存，对象被回收后快照自动清除
+ * 不可变的字段值直接引用；Date、Calendar 和数组等可变的值只保存时间或内容哈希组成的摘要，不复制，
+ * 对象中的值被原地修改时也能检查出变化
+ * selectAll、selectAllParallel 和 fetch 加载的关联对象是批量读取，不记录快照，更新时写入所有非空字段
+ * @author 翁鹏
+ */
+public class EntitySnapshots {
+
+    private static final Map<IdentityKey, Object[]> SNAPSHOTS = new ConcurrentHashMap<>();
+
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+
+    private EntitySnapshots() {
+    }
+
+    /**
+     * 记录对象的快照，保存每个字段值的指纹
+     */
+    public static void track(Object entity, Object[] values) {
+        expunge();
+        Object[] fingerprints = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            fingerprints[i] = fingerprint(values[i]);
+        }
+        SNAPSHOTS.put(new IdentityKey(entity, QUEUE), fingerprints);
+    }
+
+    /**
+     * 获取对象的快照（字段值的指纹），未记录时返回null
+     */
+    public static Object[] get(Object entity) {
+        return SNAPSHOTS.get(new IdentityKey(entity, null));
+    }
+
+    /**
+     * 将对象后来加载的字段值合并到已记录的快照中，未记录快照时忽略，例如 Lazy 字段第一次访问后
+     */
+    static void merge(Object entity, int index, Object value) {
+        SNAPSHOTS.computeIfPresent(new IdentityKey(entity, null), (key, snapshot) -> {
+            Object[] merged = snapshot.clone();
+            merged[index] = fingerprint(value);
+            return merged;
+        });
+    }
+
+    /**
+     * 清除对象的快照
+     */
+    public static void forget(Object entity) {
+        SNAPSHOTS.remove(new IdentityKey(entity, null));
+    }
+
+    /**
+     * 字段值的指纹：不可变的值为值本身，Date、Calendar 和数组为摘要，对同一个指纹再取指纹结果不变
+     * 两个值的指纹 equals 时视为没有变化
+     */
+    public static Object fingerprint(Object value) {
+        if (value instanceof Date) {
+            // Timestamp 的 getTime 只精确到毫秒，纳秒部分单独记录
+            long nanos = value instanceof Timestamp ? ((Timestamp) value).getNanos() : 0;
+            return new Digest(((Date) value).getTime(), nanos);
+        }
+        if (value instanceof Calendar) {
+            Calendar calendar = (Calendar) value;
+            return new Digest(calendar.getTimeInMillis(), calendar.getTimeZone().getID().hashCode());
+        }
+        if (value != null && value.getClass().isArray()) {
+            return new Digest(Array.getLength(value), hash(value));
+        }
+        return value;
+    }
+
+    /**
+     * 数组内容的64位哈希
+     */
+    private static long hash(Object array) {
+        long hash = 0xcbf29ce484222325L;
+        if (array instanceof byte[]) {
+            for (byte b : (byte[]) array) {
+                hash = (hash ^ b) * 0x100000001b3L;
+            }
+            return hash;
+        }
+        int length = Array.getLength(array);
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ Objects.hashCode(fingerprint(Array.get(array, i)))) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * 清除已被回收的对象的快照
+     */
+    private static void expunge() {
+        Reference<?> reference;
+        while ((reference = QUEUE.poll()) != null) {
+            SNAPSHOTS.remove(reference);
+        }
+    }
+
+    /**
+     * 可变值的摘要
+     */
+    private static final class Digest {
+
+        private final long high;
+
+        private final long low;
+
+        Digest(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Digest)) {
+                return false;
+            }
+            Digest digest = (Digest) o;
+            return high == digest.high && low == digest.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high * 31 + low);
+        }
+    }
+
+    /**
+     * 按对象身份比较的弱引用key
+     */
+    private static final class IdentityKey extends WeakReference<Object> {
+
+        private final int hash;
+
+        IdentityKey(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof IdentityKey)) {
+                return false;
+            }
+            Object referent = get();
+            return referent != null && referent == ((IdentityKey) o).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
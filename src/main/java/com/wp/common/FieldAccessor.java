@@ -0,0 +1,49 @@
+package com.wp.common;
+
+/**
+ * 字段访问器，每个类的每个字段只解析一次，缓存在 ColumnInfo 中
+ * @author 翁鹏
+ */
+public interface FieldAccessor {
+
+    /**
+     * 获取字段值
+     */
+    Object get(Object target);
+
+    /**
+     * 设置字段值，基本类型字段传入null时忽略
+     */
+    void set(Object target, Object value);
+
+    /**
+     * 设置基本类型字段的值，默认装箱后调用 set，基于 MethodHandle 的访问器直接写入不装箱
+     */
+    default void setInt(Object target, int value) {
+        set(target, value);
+    }
+
+    default void setLong(Object target, long value) {
+        set(target, value);
+    }
+
+    default void setDouble(Object target, double value) {
+        set(target, value);
+    }
+
+    default void setFloat(Object target, float value) {
+        set(target, value);
+    }
+
+    default void setShort(Object target, short value) {
+        set(target, value);
+    }
+
+    default void setByte(Object target, byte value) {
+        set(target, value);
+    }
+
+    default void setBoolean(Object target, boolean value) {
+        set(target, value);
+    }
+}
@@ -0,0 +1,84 @@
+package com.wp.common;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 按主键顺序逐页读取的迭代器（keyset分页）
+ * 每页都以上一页最后一行的主键为起点，任意深度的页查询开销相同，适合全表导出
+ * @author 翁鹏
+ */
+public class KeysetPager<T> implements Iterator<List<T>> {
+
+    private final DbTemplate dbTemplate;
+
+    private final Class<T> clazz;
+
+    private final int limit;
+
+    private final EntityPlan plan;
+
+    /**
+     * 已读取的最后一行的主键，还没有读取时为起始主键
+     */
+    private Object lastKey;
+
+    /**
+     * 预读的下一页
+     */
+    private List<T> nextPage;
+
+    private boolean finished;
+
+    public KeysetPager(DbTemplate dbTemplate, Class<T> clazz, Object afterKey, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit必须大于0");
+        }
+        this.dbTemplate = dbTemplate;
+        this.clazz = clazz;
+        this.limit = limit;
+        this.plan = AnnotationParser.getEntityPlan(clazz);
+        this.lastKey = afterKey;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextPage == null && !finished) {
+            try {
+                nextPage = dbTemplate.page(clazz, lastKey, limit);
+            } catch (SQLException e) {
+                finished = true;
+                throw new IllegalStateException("分页查询表[" + plan.getTableName() + "]失败", e);
+            }
+            if (nextPage.isEmpty()) {
+                nextPage = null;
+                finished = true;
+            }
+        }
+        return nextPage != null;
+    }
+
+    @Override
+    public List<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<T> page = nextPage;
+        nextPage = null;
+        lastKey = plan.getKey(page.get(page.size() - 1));
+        // 不满一页说明已经读取完毕，省去最后一次查询
+        if (page.size() < limit) {
+            finished = true;
+        }
+        return page;
+    }
+
+    /**
+     * 已读取的最后一行的主键，可用于中断后继续读取
+     */
+    public Object getLastKey() {
+        return lastKey;
+    }
+}
@@ -0,0 +1,77 @@
+package com.wp.common;
+
+import java.sql.SQLException;
+
+/**
+ * 延迟加载的字段值，用作实体类字段的类型，例如 private Lazy&lt;String&gt; content
+ * 查询时不读取该字段，第一次调用 get 时按主键单独查询；也可以通过 DbTemplate.fetchLazy 一次加载整个列表
+ * @author 翁鹏
+ */
+public final class Lazy<T> {
+
+    private final Loader<? extends T> loader;
+
+    private volatile boolean loaded;
+
+    private T value;
+
+    public Lazy(Loader<? extends T> loader) {
+        this.loader = loader;
+    }
+
+    private Lazy(T value) {
+        this.loader = null;
+        this.value = value;
+        this.loaded = true;
+    }
+
+    /**
+     * 创建已加载的值，例如保存或更新对象时设置字段值
+     */
+    public static <T> Lazy<T> of(T value) {
+        return new Lazy<>(value);
+    }
+
+    /**
+     * 获取值，未加载时查询数据库
+     */
+    public T get() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    try {
+                        value = loader.load();
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("延迟加载字段失败", e);
+                    }
+                    loaded = true;
+                }
+            }
+        }
+        return value;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 已加载时返回值，未加载时返回null，不访问数据库
+     */
+    T peek() {
+        return loaded ? value : null;
+    }
+
+    @Override
+    public String toString() {
+        return loaded ? String.valueOf(value) : "Lazy[未加载]";
+    }
+
+    /**
+     * 值的加载方法
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws SQLException;
+    }
+}
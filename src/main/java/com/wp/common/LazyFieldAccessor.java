@@ -0,0 +1,36 @@
+package com.wp.common;
+
+/**
+ * Lazy 类型字段的访问器：读取时返回已加载的值（未加载时为null），写入时包装为已加载的 Lazy
+ * 保存、更新和脏检查因此只处理已加载的值，未加载的字段不会被写入
+ * @author 翁鹏
+ */
+class LazyFieldAccessor implements FieldAccessor {
+
+    /**
+     * 读写 Lazy 对象本身的访问器
+     */
+    private final FieldAccessor holderAccessor;
+
+    LazyFieldAccessor(FieldAccessor holderAccessor) {
+        this.holderAccessor = holderAccessor;
+    }
+
+    @Override
+    public Object get(Object target) {
+        Lazy<?> lazy = holder(target);
+        return lazy == null ? null : lazy.peek();
+    }
+
+    @Override
+    public void set(Object target, Object value) {
+        holderAccessor.set(target, value instanceof Lazy ? value : Lazy.of(value));
+    }
+
+    /**
+     * 获取字段中的 Lazy 对象
+     */
+    Lazy<?> holder(Object target) {
+        return (Lazy<?>) holderAccessor.get(target);
+    }
+}
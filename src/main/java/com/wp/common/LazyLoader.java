@@ -0,0 +1,45 @@
+package com.wp.common;
+
+import com.wp.sharding.ShardExecutor;
+import com.wp.sharding.ShardingPlan;
+import com.wp.utils.DbUtil;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * 按主键查询单个延迟加载字段
+ * @author 翁鹏
+ */
+final class LazyLoader {
+
+    private LazyLoader() {
+    }
+
+    /**
+     * 查询对象的延迟加载字段，对象不存在或主键为空时返回null
+     */
+    static Object load(EntityPlan plan, ColumnInfo column, Object id) throws SQLException {
+        if (id == null) {
+            return null;
+        }
+        Class<?> clazz = plan.getEntityClass();
+        ShardingPlan sharding = AnnotationParser.getShardingPlan(clazz);
+        List<?> list;
+        if (sharding == null) {
+            list = DbUtil.executeQuery(clazz, plan.getProjection(column.getFieldName()).getSelectByIdSql(), id);
+        } else if (sharding.isPrimaryKeyShardKey()) {
+            list = ShardExecutor.execute(sharding, sharding.shardOfKey(id), (shard, shardPlan) ->
+                    DbUtil.executeQuery(clazz, shardPlan.getProjection(column.getFieldName()).getSelectByIdSql(), id));
+        } else {
+            list = null;
+            for (List<?> shardList : ShardExecutor.executeAll(sharding, (shard, shardPlan) ->
+                    DbUtil.executeQuery(clazz, shardPlan.getProjection(column.getFieldName()).getSelectByIdSql(), id))) {
+                if (!shardList.isEmpty()) {
+                    list = shardList;
+                }
+            }
+        }
+        return list == null || list.isEmpty() ? null : column.getAccessor().get(list.get(0));
+    }
+}
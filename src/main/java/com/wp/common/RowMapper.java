@@ -0,0 +1,220 @@
+package com.wp.common;
+
+import com.wp.type.TypeHandler;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 结果集行映射器
+ * 同一个(实体类, 结果集列)组合只编译一次：按列下标保存列读取器，
+ * 之后每一行只需要按下标取值、设值，映射耗时与单元格数量成线性关系
+ * 基本类型字段使用 getInt/getLong 等方法读取并直接写入，其他字段使用字段的类型处理器读取
+ * @author 翁鹏
+ */
+public class RowMapper<T> {
+
+    /**
+     * 最多缓存的结果集形状数量
+     */
+    private static final int MAX_SHAPES = 1024;
+
+    /**
+     * 存储结果集形状和行映射器的映射关系
+     */
+    private static final Map<Shape, RowMapper<?>> MAPPER_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 实体类
+     */
+    private final Class<T> clazz;
+
+    /**
+     * 实体语句计划，用于创建对象
+     */
+    private final EntityPlan plan;
+
+    /**
+     * 按列下标（从0开始）存储的列读取器，没有对应字段的列为null
+     */
+    private final ColumnReader[] readers;
+
+    /**
+     * 实体类是否有 Lazy 类型的字段
+     */
+    private final boolean lazyHolders;
+
+    private RowMapper(Class<T> clazz, EntityPlan plan, ColumnReader[] readers) {
+        this.clazz = clazz;
+        this.plan = plan;
+        this.readers = readers;
+        this.lazyHolders = plan.hasLazyHolders();
+    }
+
+    /**
+     * 获取行映射器，第一次遇到该结果集形状时编译并缓存
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> RowMapper<T> of(Class<T> clazz, ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        String[] labels = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            labels[i] = metaData.getColumnLabel(i + 1);
+        }
+        Shape shape = new Shape(clazz, labels);
+        RowMapper<T> rowMapper = (RowMapper<T>) MAPPER_MAP.get(shape);
+        if (rowMapper == null) {
+            rowMapper = compile(clazz, labels);
+            if (MAPPER_MAP.size() < MAX_SHAPES) {
+                MAPPER_MAP.putIfAbsent(shape, rowMapper);
+            }
+        }
+        return rowMapper;
+    }
+
+    /**
+     * 编译行映射器
+     */
+    private static <T> RowMapper<T> compile(Class<T> clazz, String[] labels) {
+        EntityPlan plan = AnnotationParser.getEntityPlan(clazz);
+        ColumnReader[] readers = new ColumnReader[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            ColumnInfo columnInfo = plan.getColumnByName(labels[i]);
+            readers[i] = columnInfo == null ? null : createReader(columnInfo);
+        }
+        return new RowMapper<>(clazz, plan, readers);
+    }
+
+    /**
+     * 按字段类型创建列读取器，数据库中的值为null时基本类型字段保持默认值
+     */
+    @SuppressWarnings("unchecked")
+    private static ColumnReader createReader(ColumnInfo columnInfo) {
+        FieldAccessor accessor = columnInfo.getAccessor();
+        Class<?> type = columnInfo.getFieldType();
+        if (type.isPrimitive() && !columnInfo.isExplicitTypeHandler()) {
+            if (type == int.class) {
+                return (rs, column, target) -> {
+                    int value = rs.getInt(column);
+                    if (!rs.wasNull()) {
+                        accessor.setInt(target, value);
+                    }
+                };
+            }
+            if (type == long.class) {
+                return (rs, column, target) -> {
+                    long value = rs.getLong(column);
+                    if (!rs.wasNull()) {
+                        accessor.setLong(target, value);
+                    }
+                };
+            }
+            if (type == double.class) {
+                return (rs, column, target) -> {
+                    double value = rs.getDouble(column);
+                    if (!rs.wasNull()) {
+                        accessor.setDouble(target, value);
+                    }
+                };
+            }
+            if (type == float.class) {
+                return (rs, column, target) -> {
+                    float value = rs.getFloat(column);
+                    if (!rs.wasNull()) {
+                        accessor.setFloat(target, value);
+                    }
+                };
+            }
+            if (type == short.class) {
+                return (rs, column, target) -> {
+                    short value = rs.getShort(column);
+                    if (!rs.wasNull()) {
+                        accessor.setShort(target, value);
+                    }
+                };
+            }
+            if (type == byte.class) {
+                return (rs, column, target) -> {
+                    byte value = rs.getByte(column);
+                    if (!rs.wasNull()) {
+                        accessor.setByte(target, value);
+                    }
+                };
+            }
+            if (type == boolean.class) {
+                return (rs, column, target) -> {
+                    boolean value = rs.getBoolean(column);
+                    if (!rs.wasNull()) {
+                        accessor.setBoolean(target, value);
+                    }
+                };
+            }
+        }
+        TypeHandler<Object> typeHandler = (TypeHandler<Object>) columnInfo.getTypeHandler();
+        return (rs, column, target) -> accessor.set(target, typeHandler.getResult(rs, column));
+    }
+
+    /**
+     * 将结果集当前行映射为对象
+     */
+    public T mapRow(ResultSet resultSet) throws SQLException {
+        T t = clazz.cast(plan.newInstance());
+        for (int i = 0; i < readers.length; i++) {
+            if (readers[i] != null) {
+                readers[i].read(resultSet, i + 1, t);
+            }
+        }
+        if (lazyHolders) {
+            // 没有查询的 Lazy 字段在第一次访问时按主键查询
+            plan.initLazy(t);
+        }
+        return t;
+    }
+
+    /**
+     * 列读取器：读取结果集当前行的一列并写入对象的字段
+     */
+    @FunctionalInterface
+    private interface ColumnReader {
+        void read(ResultSet resultSet, int column, Object target) throws SQLException;
+    }
+
+    /**
+     * 结果集形状：实体类 + 列名列表
+     */
+    private static final class Shape {
+
+        private final Class<?> clazz;
+
+        private final String[] labels;
+
+        private final int hash;
+
+        Shape(Class<?> clazz, String[] labels) {
+            this.clazz = clazz;
+            this.labels = labels;
+            this.hash = 31 * clazz.hashCode() + Arrays.hashCode(labels);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Shape)) {
+                return false;
+            }
+            Shape shape = (Shape) o;
+            return clazz == shape.clazz && Arrays.equals(labels, shape.labels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.wp.common;
+
+import com.wp.utils.DbUtil;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 号段主键分配器
+ * 在 orm_sequence 表中一次预留 blockSize 个主键，号段用完前在内存中发放，不访问数据库
+ * 号段在写入对象所用的数据源上预留（读写分离时为主库），每个数据源分别维护自己的号段
+ * 预留号段使用独立的连接和事务，不受当前会话回滚影响，回滚或重启时未使用的主键会被跳过
+ * @author 翁鹏
+ */
+public class SequenceAllocator {
+
+    private static final String UPDATE_SQL = "update orm_sequence set next_value = next_value + ? where name = ?";
+
+    private static final String SELECT_SQL = "select next_value from orm_sequence where name = ?";
+
+    private static final String INSERT_SQL = "insert into orm_sequence(name, next_value) values(?, ?)";
+
+    private final String name;
+
+    private final int blockSize;
+
+    private final long initialValue;
+
+    /**
+     * 每个数据源当前的号段
+     */
+    private final Map<DataSource, Block> blocks = new HashMap<>();
+
+    public SequenceAllocator(String name, int blockSize, long initialValue) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize必须大于0");
+        }
+        this.name = name;
+        this.blockSize = blockSize;
+        this.initialValue = initialValue;
+    }
+
+    /**
+     * 在默认数据源上获取下一个主键
+     */
+    public long next() throws SQLException {
+        return next(DbUtil.getDataSource());
+    }
+
+    /**
+     * 在指定的数据源上获取下一个主键，号段用完时预留新的号段
+     * @param dataSource 写入对象所用的数据源
+     */
+    public synchronized long next(DataSource dataSource) throws SQLException {
+        Block block = blocks.get(dataSource);
+        if (block == null) {
+            block = new Block();
+            blocks.put(dataSource, block);
+        }
+        if (block.next >= block.end) {
+            block.end = reserve(dataSource);
+            block.next = block.end - blockSize;
+        }
+        return block.next++;
+    }
+
+    /**
+     * 在数据库中预留一个号段，读写分离的数据源获取的是主库的连接
+     * @return 返回号段的结束值（不包含）
+     */
+    private long reserve(DataSource dataSource) throws SQLException {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(false);
+            statement = connection.prepareStatement(UPDATE_SQL);
+            statement.setLong(1, blockSize);
+            statement.setString(2, name);
+            if (statement.executeUpdate() == 0) {
+                // 序列不存在时创建，并发创建失败时重新预留
+                statement.close();
+                statement = connection.prepareStatement(INSERT_SQL);
+                statement.setString(1, name);
+                statement.setLong(2, initialValue + blockSize);
+                try {
+                    statement.executeUpdate();
+                    connection.commit();
+                    return initialValue + blockSize;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    return reserveExisting(connection);
+                }
+            }
+            statement.close();
+            statement = connection.prepareStatement(SELECT_SQL);
+            statement.setString(1, name);
+            resultSet = statement.executeQuery();
+            if (!resultSet.next()) {
+                throw new IllegalStateException("没有找到序列[" + name + "]");
+            }
+            long value = resultSet.getLong(1);
+            connection.commit();
+            return value;
+        } catch (SQLException | RuntimeException e) {
+            if (connection != null) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            if (connection != null) {
+                connection.setAutoCommit(true);
+            }
+            DbUtil.closeConnection(connection, statement, resultSet);
+        }
+    }
+
+    /**
+     * 序列已由其他线程或进程创建，重新执行一次预留
+     */
+    private long reserveExisting(Connection connection) throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(UPDATE_SQL);
+             PreparedStatement select = connection.prepareStatement(SELECT_SQL)) {
+            update.setLong(1, blockSize);
+            update.setString(2, name);
+            if (update.executeUpdate() == 0) {
+                throw new IllegalStateException("没有找到序列[" + name + "]");
+            }
+            select.setString(1, name);
+            try (ResultSet resultSet = select.executeQuery()) {
+                resultSet.next();
+                long value = resultSet.getLong(1);
+                connection.commit();
+                return value;
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * 号段：下一个可用的主键和结束值（不包含）
+     */
+    private static final class Block {
+
+        private long next;
+
+        private long end;
+    }
+}
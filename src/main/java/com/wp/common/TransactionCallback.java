@@ -0,0 +1,18 @@
+package com.wp.common;
+
+import java.sql.SQLException;
+
+/**
+ * 事务回调
+ * @author 翁鹏
+ */
+@FunctionalInterface
+public interface TransactionCallback<R> {
+
+    /**
+     * 在事务中执行的操作
+     * @param dbTemplate 当前的 DbTemplate
+     * @return 返回操作结果
+     */
+    R doInTransaction(DbTemplate dbTemplate) throws SQLException;
+}
@@ -0,0 +1,28 @@
+package com.wp.common;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 更新结果
+ * @author 翁鹏
+ */
+@Data
+public class UpdateResult {
+
+    /**
+     * 受影响的行数
+     */
+    private final int rowsAffected;
+
+    /**
+     * 写入的表字段名（不含where条件中的主键）
+     */
+    private final List<String> writtenColumns;
+
+    /**
+     * 脏检查发现没有字段变化，没有访问数据库
+     */
+    private final boolean skipped;
+}
@@ -0,0 +1,58 @@
+package com.wp.common;
+
+import lombok.Data;
+
+/**
+ * 插入或更新的结果
+ * 只有 MySQL 能从受影响行数区分插入和更新：连接地址开启 useAffectedRows=true 时1为插入，2为更新，0为值没有变化；
+ * 未开启（MySQL 驱动的默认值）时值没有变化的行也返回1，1无法区分插入还是未变化的更新，计入 unknown。
+ * 其他数据库以及驱动没有返回行数时也计入 unknown
+ * @author 翁鹏
+ */
+@Data
+public class UpsertResult {
+
+    /**
+     * 每个对象对应的受影响行数，与传入顺序一致
+     */
+    private final int[] rowsAffected;
+
+    /**
+     * 插入的行数
+     */
+    private final int inserted;
+
+    /**
+     * 已存在并被更新的行数（包括值没有变化的行）
+     */
+    private final int updated;
+
+    /**
+     * 无法区分插入还是更新的行数
+     */
+    private final int unknown;
+
+    /**
+     * 根据受影响行数统计插入和更新的行数
+     * @param useAffectedRows MySQL 连接是否开启了 useAffectedRows=true
+     */
+    public static UpsertResult of(Dialect dialect, boolean useAffectedRows, int[] rowsAffected) {
+        int inserted = 0;
+        int updated = 0;
+        int unknown = 0;
+        for (int count : rowsAffected) {
+            if (dialect != Dialect.MYSQL || count < 0) {
+                unknown++;
+            } else if (count == 1) {
+                if (useAffectedRows) {
+                    inserted++;
+                } else {
+                    unknown++;
+                }
+            } else {
+                updated++;
+            }
+        }
+        return new UpsertResult(rowsAffected, inserted, updated, unknown);
+    }
+}
@@ -0,0 +1,251 @@
+package com.wp.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 语句执行指标和拦截器链
+ * DbUtil 执行每条语句时记录获取连接、执行语句、映射结果集的耗时以及行数，按归一化的sql汇总到无锁直方图中；
+ * 超过慢查询阈值的语句以 warn 级别记录，逐条语句的日志默认关闭，开启后以 info 级别记录
+ * @author 翁鹏
+ */
+@Slf4j
+public class OrmMetrics {
+
+    /**
+     * 最多统计的归一化sql数量，超出后汇总到同一条指标中
+     */
+    private static final int MAX_STATEMENTS = 1024;
+
+    private static final String OTHER_STATEMENTS = "<其他>";
+
+    private static final String OBJECT_NAME = "com.wp:type=OrmMetrics";
+
+    private static final Map<String, StatementMetrics> STATEMENTS = new ConcurrentHashMap<>();
+
+    private static final List<StatementInterceptor> INTERCEPTORS = new CopyOnWriteArrayList<>();
+
+    /**
+     * 是否统计指标
+     */
+    private static volatile boolean enabled = true;
+
+    /**
+     * 是否逐条记录语句日志
+     */
+    private static volatile boolean statementLogging = false;
+
+    /**
+     * 慢查询阈值，单位为纳秒，小于等于0表示不记录慢查询
+     */
+    private static volatile long slowQueryThresholdNanos = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 开始执行语句
+     * @param params 参数，批处理时为null
+     * @param batchCount 批处理的参数组数，其他语句为1
+     */
+    public static StatementContext begin(StatementType type, String sql, Object[] params, int batchCount) {
+        if (!enabled && !statementLogging && slowQueryThresholdNanos <= 0 && INTERCEPTORS.isEmpty()) {
+            return StatementContext.DISABLED;
+        }
+        StatementContext context = new StatementContext(type, sql, params, batchCount, true);
+        for (StatementInterceptor interceptor : INTERCEPTORS) {
+            try {
+                interceptor.beforeExecute(context);
+            } catch (RuntimeException e) {
+                log.warn("语句拦截器执行失败", e);
+            }
+        }
+        return context;
+    }
+
+    /**
+     * 语句执行结束（包括执行失败）
+     */
+    public static void end(StatementContext context) {
+        if (!context.isActive()) {
+            return;
+        }
+        long thresholdNanos = slowQueryThresholdNanos;
+        boolean slow = thresholdNanos > 0 && context.getTotalNanos() >= thresholdNanos;
+        if (enabled) {
+            metricsFor(context.getSql()).record(context, slow);
+        }
+        if (slow) {
+            log.warn("慢查询：{}ms，sql：{}，参数：{}", TimeUnit.NANOSECONDS.toMillis(context.getTotalNanos()),
+                    context.getSql(), context.getParams() != null ? context.getParams() : context.getBatchCount() + "组");
+        } else if (statementLogging) {
+            log.info("执行sql：{}，参数：{}，耗时：{}us", context.getSql(),
+                    context.getParams() != null ? context.getParams() : context.getBatchCount() + "组",
+                    TimeUnit.NANOSECONDS.toMicros(context.getTotalNanos()));
+        }
+        for (StatementInterceptor interceptor : INTERCEPTORS) {
+            try {
+                interceptor.afterExecute(context);
+            } catch (RuntimeException e) {
+                log.warn("语句拦截器执行失败", e);
+            }
+        }
+    }
+
+    private static StatementMetrics metricsFor(String sql) {
+        String normalized = SqlNormalizer.normalize(sql);
+        StatementMetrics metrics = STATEMENTS.get(normalized);
+        if (metrics == null) {
+            String key = STATEMENTS.size() < MAX_STATEMENTS ? normalized : OTHER_STATEMENTS;
+            metrics = STATEMENTS.computeIfAbsent(key, StatementMetrics::new);
+        }
+        return metrics;
+    }
+
+    /**
+     * 添加拦截器，按添加顺序调用
+     */
+    public static void addInterceptor(StatementInterceptor interceptor) {
+        INTERCEPTORS.add(interceptor);
+    }
+
+    public static void removeInterceptor(StatementInterceptor interceptor) {
+        INTERCEPTORS.remove(interceptor);
+    }
+
+    /**
+     * 获取各归一化sql的统计快照
+     */
+    public static List<StatementStats> getStatements() {
+        List<StatementStats> stats = new ArrayList<>(STATEMENTS.size());
+        for (StatementMetrics metrics : STATEMENTS.values()) {
+            stats.add(metrics.toStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 获取指定sql的统计快照，没有执行过时返回null
+     */
+    public static StatementStats getStatement(String sql) {
+        StatementMetrics metrics = STATEMENTS.get(SqlNormalizer.normalize(sql));
+        return metrics == null ? null : metrics.toStats();
+    }
+
+    /**
+     * 清空统计
+     */
+    public static void reset() {
+        STATEMENTS.clear();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        OrmMetrics.enabled = enabled;
+    }
+
+    public static boolean isStatementLogging() {
+        return statementLogging;
+    }
+
+    public static void setStatementLogging(boolean statementLogging) {
+        OrmMetrics.statementLogging = statementLogging;
+    }
+
+    public static long getSlowQueryThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowQueryThresholdNanos);
+    }
+
+    /**
+     * 设置慢查询阈值，小于等于0表示不记录慢查询
+     */
+    public static void setSlowQueryThresholdMillis(long slowQueryThresholdMillis) {
+        OrmMetrics.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis);
+    }
+
+    /**
+     * 注册JMX，重复注册时忽略
+     */
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MBean(), name);
+            }
+        } catch (JMException e) {
+            log.warn("注册JMX失败", e);
+        }
+    }
+
+    /**
+     * 注销JMX
+     */
+    public static void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            log.warn("注销JMX失败", e);
+        }
+    }
+
+    /**
+     * JMX实现，委托给静态方法
+     */
+    private static class MBean implements OrmMetricsMXBean {
+
+        @Override
+        public StatementStats[] getStatements() {
+            return OrmMetrics.getStatements().toArray(new StatementStats[0]);
+        }
+
+        @Override
+        public long getSlowQueryThresholdMillis() {
+            return OrmMetrics.getSlowQueryThresholdMillis();
+        }
+
+        @Override
+        public void setSlowQueryThresholdMillis(long slowQueryThresholdMillis) {
+            OrmMetrics.setSlowQueryThresholdMillis(slowQueryThresholdMillis);
+        }
+
+        @Override
+        public boolean isStatementLogging() {
+            return OrmMetrics.isStatementLogging();
+        }
+
+        @Override
+        public void setStatementLogging(boolean statementLogging) {
+            OrmMetrics.setStatementLogging(statementLogging);
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return OrmMetrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            OrmMetrics.setEnabled(enabled);
+        }
+
+        @Override
+        public void reset() {
+            OrmMetrics.reset();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.wp.metrics;
+
+/**
+ * 语句指标的JMX接口，通过 OrmMetrics.registerMBean 注册为 com.wp:type=OrmMetrics
+ * @author 翁鹏
+ */
+public interface OrmMetricsMXBean {
+
+    /**
+     * 各归一化sql的统计
+     */
+    StatementStats[] getStatements();
+
+    long getSlowQueryThresholdMillis();
+
+    void setSlowQueryThresholdMillis(long slowQueryThresholdMillis);
+
+    boolean isStatementLogging();
+
+    void setStatementLogging(boolean statementLogging);
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * 清空统计
+     */
+    void reset();
+}
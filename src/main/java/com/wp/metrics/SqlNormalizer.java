@@ -0,0 +1,95 @@
+package com.wp.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * sql归一化：合并空白，将字符串和数字字面量替换为?，
+ * 将多行 values 列表和 in 列表折叠为一项，使同一形状的语句归为同一条指标
+ * @author 翁鹏
+ */
+public class SqlNormalizer {
+
+    /**
+     * 最多缓存的归一化结果数量
+     */
+    private static final int MAX_CACHED = 1024;
+
+    private static final Pattern VALUES_LIST = Pattern.compile(
+            "(\\((?:\\s*\\?\\s*,)*\\s*\\?\\s*\\))(?:\\s*,\\s*\\((?:\\s*\\?\\s*,)*\\s*\\?\\s*\\))+");
+
+    private static final Pattern IN_LIST = Pattern.compile(
+            "(?i)\\bin\\s*\\((?:\\s*\\?\\s*,)+\\s*\\?\\s*\\)");
+
+    private static final Map<String, String> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 获取归一化的sql
+     */
+    public static String normalize(String sql) {
+        String normalized = CACHE.get(sql);
+        if (normalized == null) {
+            normalized = doNormalize(sql);
+            if (CACHE.size() < MAX_CACHED) {
+                CACHE.putIfAbsent(sql, normalized);
+            }
+        }
+        return normalized;
+    }
+
+    private static String doNormalize(String sql) {
+        StringBuilder builder = new StringBuilder(sql.length());
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                // 字符串字面量，''为转义的单引号
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                builder.append('?');
+            } else if (Character.isDigit(c) && !isIdentifierPart(builder)) {
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                builder.append('?');
+            } else if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (builder.length() > 0) {
+                    builder.append(' ');
+                }
+            } else {
+                builder.append(c);
+                i++;
+            }
+        }
+        String normalized = builder.toString().trim();
+        normalized = VALUES_LIST.matcher(normalized).replaceAll("$1, ...");
+        normalized = IN_LIST.matcher(normalized).replaceAll("in (?, ...)");
+        return normalized;
+    }
+
+    /**
+     * 判断前一个字符是否是标识符的一部分，例如 t1 中的1不是字面量
+     */
+    private static boolean isIdentifierPart(StringBuilder builder) {
+        if (builder.length() == 0) {
+            return false;
+        }
+        char previous = builder.charAt(builder.length() - 1);
+        return Character.isLetterOrDigit(previous) || previous == '_' || previous == '$' || previous == '`';
+    }
+}
@@ -0,0 +1,161 @@
+package com.wp.metrics;
+
+/**
+ * 一次语句执行的上下文，记录各阶段的耗时和行数，执行结束后交给拦截器
+ * 没有开启指标、日志且没有拦截器时使用不记录任何数据的上下文
+ * @author 翁鹏
+ */
+public class StatementContext {
+
+    /**
+     * 不记录数据的上下文
+     */
+    static final StatementContext DISABLED = new StatementContext(null, null, null, 0, false);
+
+    private final StatementType type;
+
+    private final String sql;
+
+    private final Object[] params;
+
+    /**
+     * 批处理的参数组数，其他语句为1
+     */
+    private final int batchCount;
+
+    private final boolean active;
+
+    private final long startNanos;
+
+    private long acquiredNanos;
+
+    private long executedNanos;
+
+    private long mappedNanos;
+
+    private long rows;
+
+    private long affected;
+
+    private Throwable error;
+
+    StatementContext(StatementType type, String sql, Object[] params, int batchCount, boolean active) {
+        this.type = type;
+        this.sql = sql;
+        this.params = params;
+        this.batchCount = batchCount;
+        this.active = active;
+        this.startNanos = active ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * 已获取连接
+     */
+    public void acquired() {
+        if (active) {
+            acquiredNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * 语句已执行
+     */
+    public void executed(long affected) {
+        if (active) {
+            executedNanos = System.nanoTime();
+            this.affected = affected;
+        }
+    }
+
+    /**
+     * 结果集已映射为对象
+     */
+    public void mapped(long rows) {
+        if (active) {
+            mappedNanos = System.nanoTime();
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * 执行失败
+     */
+    public void failed(Throwable error) {
+        if (active) {
+            this.error = error;
+        }
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    public StatementType getType() {
+        return type;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * 参数，批处理时为null
+     */
+    public Object[] getParams() {
+        return params;
+    }
+
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * 获取连接的耗时，单位为纳秒
+     */
+    public long getAcquireNanos() {
+        return acquiredNanos == 0 ? 0 : acquiredNanos - startNanos;
+    }
+
+    /**
+     * 执行语句的耗时，单位为纳秒
+     */
+    public long getExecuteNanos() {
+        return executedNanos == 0 || acquiredNanos == 0 ? 0 : executedNanos - acquiredNanos;
+    }
+
+    /**
+     * 映射结果集的耗时，单位为纳秒
+     */
+    public long getMappingNanos() {
+        return mappedNanos == 0 || executedNanos == 0 ? 0 : mappedNanos - executedNanos;
+    }
+
+    /**
+     * 从开始到最后一个阶段结束的总耗时，单位为纳秒
+     */
+    public long getTotalNanos() {
+        long end = Math.max(mappedNanos, Math.max(executedNanos, acquiredNanos));
+        return end == 0 ? 0 : end - startNanos;
+    }
+
+    /**
+     * 返回的行数
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * 受影响的行数
+     */
+    public long getAffected() {
+        return affected;
+    }
+
+    /**
+     * 执行失败时的异常，成功时为null
+     */
+    public Throwable getError() {
+        return error;
+    }
+}
@@ -0,0 +1,20 @@
+package com.wp.metrics;
+
+/**
+ * 语句执行拦截器，通过 OrmMetrics.addInterceptor 注册
+ * 拦截器在执行语句的线程中同步调用，实现应尽量轻量，抛出的异常会被记录并忽略
+ * @author 翁鹏
+ */
+public interface StatementInterceptor {
+
+    /**
+     * 执行语句之前调用
+     */
+    default void beforeExecute(StatementContext context) {
+    }
+
+    /**
+     * 执行语句之后调用（包括执行失败），此时上下文中已有各阶段的耗时和行数
+     */
+    void afterExecute(StatementContext context);
+}
@@ -0,0 +1,57 @@
+package com.wp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一条归一化sql的累计指标，所有计数无锁
+ * @author 翁鹏
+ */
+class StatementMetrics {
+
+    private final String sql;
+
+    private final LatencyHistogram acquire = new LatencyHistogram();
+
+    private final LatencyHistogram execute = new LatencyHistogram();
+
+    private final LatencyHistogram mapping = new LatencyHistogram();
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder errorCount = new LongAdder();
+
+    private final LongAdder slowCount = new LongAdder();
+
+    private final LongAdder rows = new LongAdder();
+
+    private final LongAdder affected = new LongAdder();
+
+    StatementMetrics(String sql) {
+        this.sql = sql;
+    }
+
+    void record(StatementContext context, boolean slow) {
+        count.increment();
+        if (context.getError() != null) {
+            errorCount.increment();
+        }
+        if (slow) {
+            slowCount.increment();
+        }
+        acquire.record(context.getAcquireNanos());
+        execute.record(context.getExecuteNanos());
+        if (context.getType() == StatementType.QUERY) {
+            mapping.record(context.getMappingNanos());
+        }
+        rows.add(context.getRows());
+        affected.add(context.getAffected());
+    }
+
+    StatementStats toStats() {
+        return new StatementStats(sql, count.sum(), errorCount.sum(), slowCount.sum(), rows.sum(), affected.sum(),
+                acquire.getMeanMicros(), acquire.getMaxMicros(),
+                execute.getMeanMicros(), execute.getPercentileMicros(0.5), execute.getPercentileMicros(0.95),
+                execute.getPercentileMicros(0.99), execute.getMaxMicros(),
+                mapping.getMeanMicros(), mapping.getMaxMicros());
+    }
+}
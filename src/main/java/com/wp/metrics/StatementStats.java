@@ -0,0 +1,62 @@
+package com.wp.metrics;
+
+import lombok.Data;
+
+/**
+ * 一条归一化sql的执行统计快照，耗时单位为微秒
+ * @author 翁鹏
+ */
+@Data
+public class StatementStats {
+
+    /**
+     * 归一化的sql
+     */
+    private final String sql;
+
+    /**
+     * 执行次数
+     */
+    private final long count;
+
+    /**
+     * 执行失败次数
+     */
+    private final long errorCount;
+
+    /**
+     * 慢查询次数
+     */
+    private final long slowCount;
+
+    /**
+     * 返回的总行数
+     */
+    private final long rows;
+
+    /**
+     * 受影响的总行数
+     */
+    private final long affected;
+
+    /**
+     * 获取连接的平均耗时和最大耗时
+     */
+    private final long meanAcquireMicros;
+    private final long maxAcquireMicros;
+
+    /**
+     * 执行语句的平均耗时、分位数耗时和最大耗时
+     */
+    private final long meanExecuteMicros;
+    private final long p50ExecuteMicros;
+    private final long p95ExecuteMicros;
+    private final long p99ExecuteMicros;
+    private final long maxExecuteMicros;
+
+    /**
+     * 映射结果集的平均耗时和最大耗时
+     */
+    private final long meanMappingMicros;
+    private final long maxMappingMicros;
+}
@@ -0,0 +1,28 @@
+package com.wp.metrics;
+
+/**
+ * 语句类型
+ * @author 翁鹏
+ */
+public enum StatementType {
+
+    /**
+     * 查询，结果集一次映射为对象集合
+     */
+    QUERY,
+
+    /**
+     * 流式查询，只记录打开游标的耗时，逐行映射的耗时由调用方承担
+     */
+    CURSOR,
+
+    /**
+     * 单条更新
+     */
+    UPDATE,
+
+    /**
+     * 批处理
+     */
+    BATCH
+}
@@ -0,0 +1,18 @@
+package com.wp.routing;
+
+/**
+ * 从库负载均衡策略
+ * @author 翁鹏
+ */
+public enum LoadBalance {
+
+    /**
+     * 轮询
+     */
+    ROUND_ROBIN,
+
+    /**
+     * 选择当前借出连接最少的从库
+     */
+    LEAST_ACTIVE
+}
@@ -0,0 +1,372 @@
+package com.wp.routing;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * 读写分离数据源
+ * getConnection 返回主库连接，用于写操作以及会话（事务）中的所有操作；
+ * getReadConnection 按负载均衡策略返回从库连接，以下情况返回主库连接：
+ * 没有从库、在 forcePrimary 范围内、当前线程在 stickyPrimaryMillis 内执行过写操作（读到自己刚写入的数据）。
+ * 从库获取连接失败时依次尝试其他从库，都失败时使用主库。
+ * <pre>
+ * RoutingDataSource dataSource = new RoutingDataSource("primary", primary)
+ *         .addReplica("replica1", replica1)
+ *         .addReplica("replica2", replica2);
+ * DbUtil.setDataSource(dataSource);
+ * </pre>
+ * @author 翁鹏
+ */
+@Slf4j
+public class RoutingDataSource implements DataSource {
+
+    /**
+     * 当前线程 forcePrimary 的嵌套层数
+     */
+    private static final ThreadLocal<int[]> FORCE_PRIMARY = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * 当前线程最后一次写操作的时间
+     */
+    private static final ThreadLocal<long[]> LAST_WRITE = ThreadLocal.withInitial(() -> new long[]{Long.MIN_VALUE});
+
+    private final String primaryName;
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas = new CopyOnWriteArrayList<>();
+
+    private volatile LoadBalance loadBalance = LoadBalance.ROUND_ROBIN;
+
+    /**
+     * 写操作后当前线程的读操作继续使用主库的时间，单位为纳秒，0表示不开启
+     */
+    private volatile long stickyPrimaryNanos = 0L;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    public RoutingDataSource(String primaryName, DataSource primary) {
+        this.primaryName = primaryName;
+        this.primary = primary;
+    }
+
+    /**
+     * 添加从库，应在使用前添加
+     */
+    public synchronized RoutingDataSource addReplica(String name, DataSource dataSource) {
+        for (Replica replica : replicas) {
+            if (replica.name.equals(name)) {
+                throw new IllegalArgumentException("从库[" + name + "]已存在");
+            }
+        }
+        replicas.add(new Replica(name, dataSource));
+        return this;
+    }
+
+    public RoutingDataSource setLoadBalance(LoadBalance loadBalance) {
+        this.loadBalance = loadBalance;
+        return this;
+    }
+
+    /**
+     * 设置写操作后当前线程继续从主库读取的时间，用于避免从库复制延迟导致读不到刚写入的数据
+     */
+    public RoutingDataSource setStickyPrimaryMillis(long stickyPrimaryMillis) {
+        this.stickyPrimaryNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, stickyPrimaryMillis));
+        return this;
+    }
+
+    /**
+     * 在返回的范围关闭之前，当前线程的读操作都使用主库
+     * <pre>
+     * try (RoutingDataSource.PrimaryScope scope = RoutingDataSource.forcePrimary()) {
+     *     dbTemplate.selectById(User.class, id);
+     * }
+     * </pre>
+     */
+    public static PrimaryScope forcePrimary() {
+        FORCE_PRIMARY.get()[0]++;
+        return new PrimaryScope();
+    }
+
+    /**
+     * 捕获当前线程的路由状态（是否在 forcePrimary 范围内、最后一次写操作的时间），
+     * 在其他线程中执行同一个操作时通过 RoutingContext.apply 应用，例如分片并行查询
+     */
+    public static RoutingContext capture() {
+        return new RoutingContext(FORCE_PRIMARY.get()[0], LAST_WRITE.get()[0]);
+    }
+
+    /**
+     * 记录当前线程执行了写操作，由 DbUtil 在写操作后调用
+     */
+    public static void markWrite() {
+        LAST_WRITE.get()[0] = System.nanoTime();
+    }
+
+    /**
+     * 获取主库连接
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    /**
+     * 获取读连接
+     */
+    public Connection getReadConnection() throws SQLException {
+        List<Replica> candidates = replicas;
+        if (candidates.isEmpty() || readsFromPrimary()) {
+            return primary.getConnection();
+        }
+        int start = choose(candidates);
+        for (int i = 0; i < candidates.size(); i++) {
+            Replica replica = candidates.get((start + i) % candidates.size());
+            try {
+                return replica.getConnection(loadBalance == LoadBalance.LEAST_ACTIVE);
+            } catch (SQLException e) {
+                log.warn("从库[{}]获取连接失败：{}", replica.name, e.getMessage());
+            }
+        }
+        log.warn("所有从库都不可用，从主库[{}]读取", primaryName);
+        return primary.getConnection();
+    }
+
+    private boolean readsFromPrimary() {
+        if (FORCE_PRIMARY.get()[0] > 0) {
+            return true;
+        }
+        long sticky = stickyPrimaryNanos;
+        long lastWrite = LAST_WRITE.get()[0];
+        return sticky > 0 && lastWrite != Long.MIN_VALUE && System.nanoTime() - lastWrite < sticky;
+    }
+
+    private int choose(List<Replica> candidates) {
+        if (loadBalance == LoadBalance.LEAST_ACTIVE) {
+            int best = 0;
+            for (int i = 1; i < candidates.size(); i++) {
+                if (candidates.get(i).active.get() < candidates.get(best).active.get()) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+        return Math.floorMod(next.getAndIncrement(), candidates.size());
+    }
+
+    public String getPrimaryName() {
+        return primaryName;
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    /**
+     * 当前线程的读操作使用的数据源：没有从库或读主库（forcePrimary、写后读）时为主库，否则为所有从库
+     */
+    public List<DataSource> getReadDataSources() {
+        List<Replica> candidates = replicas;
+        if (candidates.isEmpty() || readsFromPrimary()) {
+            return Collections.singletonList(primary);
+        }
+        List<DataSource> dataSources = new ArrayList<>(candidates.size());
+        for (Replica replica : candidates) {
+            dataSources.add(replica.dataSource);
+        }
+        return dataSources;
+    }
+
+    /**
+     * 所有从库的名称
+     */
+    public List<String> getReplicaNames() {
+        List<String> names = new ArrayList<>();
+        for (Replica replica : replicas) {
+            names.add(replica.name);
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * 从库当前借出的连接数（只在 LEAST_ACTIVE 策略下统计）
+     */
+    public int getActiveCount(String replicaName) {
+        for (Replica replica : replicas) {
+            if (replica.name.equals(replicaName)) {
+                return replica.active.get();
+            }
+        }
+        throw new IllegalArgumentException("没有找到从库[" + replicaName + "]");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return primary.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+
+    /**
+     * forcePrimary 的范围
+     */
+    public static final class PrimaryScope implements AutoCloseable {
+
+        private boolean closed;
+
+        private PrimaryScope() {
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                FORCE_PRIMARY.get()[0]--;
+            }
+        }
+    }
+
+    /**
+     * 捕获的路由状态
+     */
+    public static final class RoutingContext {
+
+        private final int forcePrimary;
+
+        private final long lastWrite;
+
+        private RoutingContext(int forcePrimary, long lastWrite) {
+            this.forcePrimary = forcePrimary;
+            this.lastWrite = lastWrite;
+        }
+
+        /**
+         * 在当前线程应用捕获的路由状态，关闭返回的范围时恢复当前线程原来的状态
+         */
+        public ContextScope apply() {
+            int[] force = FORCE_PRIMARY.get();
+            long[] last = LAST_WRITE.get();
+            ContextScope scope = new ContextScope(force[0], last[0]);
+            force[0] = forcePrimary;
+            last[0] = lastWrite;
+            return scope;
+        }
+    }
+
+    /**
+     * RoutingContext.apply 的范围
+     */
+    public static final class ContextScope implements AutoCloseable {
+
+        private final int forcePrimary;
+
+        private final long lastWrite;
+
+        private ContextScope(int forcePrimary, long lastWrite) {
+            this.forcePrimary = forcePrimary;
+            this.lastWrite = lastWrite;
+        }
+
+        @Override
+        public void close() {
+            FORCE_PRIMARY.get()[0] = forcePrimary;
+            LAST_WRITE.get()[0] = lastWrite;
+        }
+    }
+
+    /**
+     * 从库
+     */
+    private static final class Replica {
+
+        private final String name;
+
+        private final DataSource dataSource;
+
+        /**
+         * 借出的连接数
+         */
+        private final AtomicInteger active = new AtomicInteger();
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * 获取连接，需要统计借出的连接数时返回的连接在关闭时减少计数
+         */
+        Connection getConnection(boolean track) throws SQLException {
+            Connection connection = dataSource.getConnection();
+            if (!track) {
+                return connection;
+            }
+            active.incrementAndGet();
+            boolean[] closed = {false};
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                            synchronized (closed) {
+                                if (!closed[0]) {
+                                    closed[0] = true;
+                                    active.decrementAndGet();
+                                }
+                            }
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.wp.sharding;
+
+import com.wp.common.DbSession;
+import com.wp.common.EntityPlan;
+import com.wp.utils.DbUtil;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分片执行器：在所有分片上执行同一个操作并按分片顺序返回结果
+ * 不在会话中时并行执行，每个分片使用各自的连接；在会话中时在当前线程依次执行，复用会话的连接
+ * @author 翁鹏
+ */
+public class ShardExecutor {
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    /**
+     * 线程池的最大线程数
+     */
+    private static final int MAX_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+
+    /**
+     * 并行执行分片查询的线程池，线程空闲60秒后回收
+     * 线程数有上限，所有线程都在执行时由调用方线程执行，并发的分片查询不会无限制地创建线程
+     */
+    private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(0, MAX_THREADS, 60L, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "orm-shard-" + THREAD_COUNT.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+    /**
+     * 在单个分片上执行的操作
+     */
+    @FunctionalInterface
+    public interface ShardTask<R> {
+        R execute(int shard, EntityPlan shardPlan) throws SQLException;
+    }
+
+    /**
+     * 在指定分片上执行操作
+     */
+    public static <R> R execute(ShardingPlan plan, int shard, ShardTask<R> task) throws SQLException {
+        return DbUtil.withDataSource(plan.getDataSource(shard), () -> task.execute(shard, plan.getShardPlan(shard)));
+    }
+
+    /**
+     * 在所有分片上执行操作
+     * @return 返回按分片顺序排列的结果
+     */
+    public static <R> List<R> executeAll(ShardingPlan plan, ShardTask<R> task) throws SQLException {
+        int shards = plan.getShardCount();
+        List<R> results = new ArrayList<>(shards);
+        if (shards == 1 || DbSession.current() != null) {
+            for (int shard = 0; shard < shards; shard++) {
+                results.add(execute(plan, shard, task));
+            }
+            return results;
+        }
+        List<Future<R>> futures = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            int current = shard;
+            // 在分片线程中沿用调用方的数据源和读写分离路由状态（例如 forcePrimary）
+            futures.add(EXECUTOR.submit(DbUtil.propagate(() -> execute(plan, current, task))));
+        }
+        SQLException failure = null;
+        for (Future<R> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelAll(futures);
+                throw new SQLException("分片查询被中断", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    cancelAll(futures);
+                    throw (RuntimeException) cause;
+                }
+                SQLException exception = cause instanceof SQLException
+                        ? (SQLException) cause : new SQLException("分片查询失败", cause);
+                if (failure == null) {
+                    failure = exception;
+                } else {
+                    failure.addSuppressed(exception);
+                }
+                results.add(null);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    private static void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.wp.sharding;
+
+/**
+ * 自定义分片函数，实现需要线程安全
+ * @author 翁鹏
+ */
+@FunctionalInterface
+public interface ShardFunction {
+
+    /**
+     * 计算分片下标
+     * @param key 分片键的值，不为null
+     * @param shards 分片数量
+     * @return 返回 [0, shards) 之间的分片下标
+     */
+    int shard(Object key, int shards);
+}
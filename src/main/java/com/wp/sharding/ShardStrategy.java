@@ -0,0 +1,23 @@
+package com.wp.sharding;
+
+/**
+ * 分片策略
+ * @author 翁鹏
+ */
+public enum ShardStrategy {
+
+    /**
+     * 取模：整数分片键按数值取模，其他类型按 hashCode 取模
+     */
+    HASH,
+
+    /**
+     * 范围：分片键落在哪个分片的上界之内
+     */
+    RANGE,
+
+    /**
+     * 自定义分片函数
+     */
+    CUSTOM
+}
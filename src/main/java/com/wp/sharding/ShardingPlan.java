@@ -0,0 +1,193 @@
+package com.wp.sharding;
+
+import com.wp.annotation.Sharding;
+import com.wp.common.AnnotationParser;
+import com.wp.common.ColumnInfo;
+import com.wp.common.EntityPlan;
+import com.wp.common.EntitySnapshots;
+import com.wp.utils.DbUtil;
+
+import javax.sql.DataSource;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 分片计划（每个实体类只构建一次，与 EntityPlan 一起缓存在 AnnotationParser 中）
+ * 保存分片键的位置、分片函数，以及每个分片的物理表语句计划和数据源名称
+ * @author 翁鹏
+ */
+public class ShardingPlan {
+
+    private final Class<?> entityClass;
+
+    /**
+     * 逻辑表名
+     */
+    private final String tableName;
+
+    /**
+     * 分片键在字段中的下标
+     */
+    private final int keyIndex;
+
+    /**
+     * 分片键是否是唯一的主键，是时按主键查询只需要访问一个分片
+     */
+    private final boolean primaryKeyShardKey;
+
+    private final ShardFunction function;
+
+    /**
+     * 每个分片的物理表语句计划
+     */
+    private final EntityPlan[] shardPlans;
+
+    /**
+     * 每个分片的数据源名称，为null时使用默认数据源
+     */
+    private final String[] dataSourceNames;
+
+    public ShardingPlan(Class<?> entityClass, Sharding sharding) {
+        this.entityClass = entityClass;
+        this.tableName = AnnotationParser.getTableName(entityClass);
+        if (sharding.shards() <= 0) {
+            throw new IllegalStateException("表[" + tableName + "]的分片数量必须大于0");
+        }
+        EntityPlan plan = AnnotationParser.getEntityPlan(entityClass);
+        List<ColumnInfo> columns = AnnotationParser.getColumnsInfo(entityClass);
+        int index = -1;
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getFieldName().equals(sharding.key())) {
+                index = i;
+            }
+        }
+        if (index < 0) {
+            throw new IllegalStateException("表[" + tableName + "]中没有分片键字段[" + sharding.key() + "]");
+        }
+        this.keyIndex = index;
+        this.primaryKeyShardKey = plan.getPrimaryKeyIndexes().length == 1 && plan.getPrimaryKeyIndexes()[0] == index;
+        this.function = createFunction(sharding);
+        this.shardPlans = new EntityPlan[sharding.shards()];
+        this.dataSourceNames = new String[sharding.shards()];
+        for (int i = 0; i < shardPlans.length; i++) {
+            shardPlans[i] = new EntityPlan(plan, tableName + String.format(sharding.suffixFormat(), i));
+            dataSourceNames[i] = sharding.dataSources().length == 0 ? null
+                    : sharding.dataSources()[i % sharding.dataSources().length];
+        }
+    }
+
+    private ShardFunction createFunction(Sharding sharding) {
+        switch (sharding.strategy()) {
+            case RANGE:
+                long[] ranges = sharding.ranges().clone();
+                if (ranges.length != sharding.shards()) {
+                    throw new IllegalStateException("表[" + tableName + "]的分片范围数量与分片数量不同");
+                }
+                return (key, shards) -> {
+                    long value = toLong(key);
+                    for (int i = 0; i < ranges.length; i++) {
+                        if (value < ranges[i]) {
+                            return i;
+                        }
+                    }
+                    throw new IllegalStateException("表[" + tableName + "]的分片键[" + key + "]超出了所有分片的范围");
+                };
+            case CUSTOM:
+                if (sharding.function() == ShardFunction.class) {
+                    throw new IllegalStateException("表[" + tableName + "]使用自定义分片时需要指定分片函数");
+                }
+                try {
+                    return sharding.function().getConstructor().newInstance();
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("无法创建分片函数[" + sharding.function().getName() + "]", e);
+                }
+            default:
+                return (key, shards) -> isIntegral(key)
+                        ? (int) Math.floorMod(toLong(key), (long) shards)
+                        : Math.floorMod(key.hashCode(), shards);
+        }
+    }
+
+    private static boolean isIntegral(Object key) {
+        return key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte
+                || key instanceof BigInteger;
+    }
+
+    private long toLong(Object key) {
+        if (key instanceof Number) {
+            return ((Number) key).longValue();
+        }
+        throw new IllegalStateException("表[" + tableName + "]的分片键[" + key + "]不是数值");
+    }
+
+    /**
+     * 根据字段值计算分片下标
+     */
+    public int shardOf(Object[] values) {
+        return shardOfKey(values[keyIndex]);
+    }
+
+    /**
+     * 根据分片键的值计算分片下标
+     */
+    public int shardOfKey(Object key) {
+        if (key == null) {
+            throw new IllegalStateException("表[" + tableName + "]的分片键不能为空");
+        }
+        int shard = function.shard(key, shardPlans.length);
+        if (shard < 0 || shard >= shardPlans.length) {
+            throw new IllegalStateException("表[" + tableName + "]的分片键[" + key + "]计算出的分片下标" + shard + "超出范围");
+        }
+        return shard;
+    }
+
+    /**
+     * 分片键的值，可能为null
+     */
+    public Object getKeyValue(Object[] values) {
+        return values[keyIndex];
+    }
+
+    /**
+     * 判断分片键相对于加载时的快照（字段值的指纹）是否发生了变化，没有快照或分片键为空时视为没有变化
+     */
+    public boolean isKeyChanged(Object[] values, Object[] snapshot) {
+        return snapshot != null && values[keyIndex] != null
+                && !Objects.equals(EntitySnapshots.fingerprint(values[keyIndex]), snapshot[keyIndex]);
+    }
+
+    public boolean isPrimaryKeyShardKey() {
+        return primaryKeyShardKey;
+    }
+
+    public int getShardCount() {
+        return shardPlans.length;
+    }
+
+    public EntityPlan getShardPlan(int shard) {
+        return shardPlans[shard];
+    }
+
+    /**
+     * 分片使用的数据源，为null时使用默认数据源
+     */
+    public DataSource getDataSource(int shard) {
+        return dataSourceNames[shard] == null ? null : DbUtil.getDataSource(dataSourceNames[shard]);
+    }
+
+    /**
+     * 号段主键使用的数据源：所有分片共用第一个分片数据源上的序列，保证主键在逻辑表中唯一，为null时使用默认数据源
+     */
+    public DataSource getSequenceDataSource() {
+        return getDataSource(0);
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+}
@@ -0,0 +1,39 @@
+package com.wp.type;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 枚举类型处理器，按序号存储
+ * 使用方式：TypeHandlers.register(Status.class, new EnumOrdinalTypeHandler<>(Status.class))
+ * @author 翁鹏
+ */
+public class EnumOrdinalTypeHandler<E extends Enum<E>> implements TypeHandler<E> {
+
+    private final Class<E> enumClass;
+
+    private final E[] constants;
+
+    public EnumOrdinalTypeHandler(Class<E> enumClass) {
+        this.enumClass = enumClass;
+        this.constants = enumClass.getEnumConstants();
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int index, E value) throws SQLException {
+        statement.setInt(index, value.ordinal());
+    }
+
+    @Override
+    public E getResult(ResultSet resultSet, int column) throws SQLException {
+        int ordinal = resultSet.getInt(column);
+        if (resultSet.wasNull()) {
+            return null;
+        }
+        if (ordinal < 0 || ordinal >= constants.length) {
+            throw new IllegalStateException("枚举[" + enumClass.getName() + "]中没有序号为" + ordinal + "的值");
+        }
+        return constants[ordinal];
+    }
+}
@@ -0,0 +1,29 @@
+package com.wp.type;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 枚举类型处理器，按名称存储，枚举类默认使用该处理器
+ * @author 翁鹏
+ */
+public class EnumTypeHandler<E extends Enum<E>> implements TypeHandler<E> {
+
+    private final Class<E> enumClass;
+
+    public EnumTypeHandler(Class<E> enumClass) {
+        this.enumClass = enumClass;
+    }
+
+    @Override
+    public void setParameter(PreparedStatement statement, int index, E value) throws SQLException {
+        statement.setString(index, value.name());
+    }
+
+    @Override
+    public E getResult(ResultSet resultSet, int column) throws SQLException {
+        String name = resultSet.getString(column);
+        return name == null ? null : Enum.valueOf(enumClass, name);
+    }
+}
@@ -0,0 +1,28 @@
+package com.wp.type;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 类型处理器：按字段的 Java 类型使用对应的 JDBC 方法绑定参数和读取结果，
+ * 例如 Integer 使用 setInt/getInt，LocalDateTime 使用 setTimestamp/getTimestamp
+ * 可以通过 TypeHandlers.register 为枚举、JSON 等类型注册自定义的处理器，
+ * 也可以通过 @Column(typeHandler = ...) 为单个字段指定
+ * 实现类需要有公共的无参构造方法（通过注解指定时）并且线程安全
+ * @author 翁鹏
+ */
+public interface TypeHandler<T> {
+
+    /**
+     * 绑定参数
+     * @param value 不为null，空值由调用方使用 setObject(index, null) 绑定
+     */
+    void setParameter(PreparedStatement statement, int index, T value) throws SQLException;
+
+    /**
+     * 读取结果
+     * @return 数据库中的值为null时返回null
+     */
+    T getResult(ResultSet resultSet, int column) throws SQLException;
+}
@@ -0,0 +1,259 @@
+package com.wp.type;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 类型处理器注册表
+ * 按 Java 类型查找处理器：先找注册的处理器，基本类型使用包装类型的处理器，枚举默认按名称存储，
+ * 再按父类和接口查找，都没有时使用 setObject/getObject
+ * 查找结果按类型缓存，自定义处理器应在使用前（例如预热前）注册
+ * @author 翁鹏
+ */
+public class TypeHandlers {
+
+    private static final Map<Class<?>, TypeHandler<?>> REGISTERED = new ConcurrentHashMap<>();
+
+    /**
+     * 基本类型和包装类型的对应关系
+     */
+    private static final Map<Class<?>, Class<?>> WRAPPERS = new HashMap<>();
+
+    private static final ClassValue<TypeHandler<?>> RESOLVED = new ClassValue<TypeHandler<?>>() {
+        @Override
+        protected TypeHandler<?> computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    static {
+        WRAPPERS.put(int.class, Integer.class);
+        WRAPPERS.put(long.class, Long.class);
+        WRAPPERS.put(short.class, Short.class);
+        WRAPPERS.put(byte.class, Byte.class);
+        WRAPPERS.put(double.class, Double.class);
+        WRAPPERS.put(float.class, Float.class);
+        WRAPPERS.put(boolean.class, Boolean.class);
+
+        REGISTERED.put(String.class, handler(PreparedStatement::setString, ResultSet::getString));
+        REGISTERED.put(Integer.class, handler(
+                (PreparedStatement s, int i, Integer v) -> s.setInt(i, v),
+                (rs, c) -> {
+                    int value = rs.getInt(c);
+                    return rs.wasNull() ? null : value;
+                }));
+        REGISTERED.put(Long.class, handler(
+                (PreparedStatement s, int i, Long v) -> s.setLong(i, v),
+                (rs, c) -> {
+                    long value = rs.getLong(c);
+                    return rs.wasNull() ? null : value;
+                }));
+        REGISTERED.put(Short.class, handler(
+                (PreparedStatement s, int i, Short v) -> s.setShort(i, v),
+                (rs, c) -> {
+                    short value = rs.getShort(c);
+                    return rs.wasNull() ? null : value;
+                }));
+        REGISTERED.put(Byte.class, handler(
+                (PreparedStatement s, int i, Byte v) -> s.setByte(i, v),
+                (rs, c) -> {
+                    byte value = rs.getByte(c);
+                    return rs.wasNull() ? null : value;
+                }));
+        REGISTERED.put(Double.class, handler(
+                (PreparedStatement s, int i, Double v) -> s.setDouble(i, v),
+                (rs, c) -> {
+                    double value = rs.getDouble(c);
+                    return rs.wasNull() ? null : value;
+                }));
+        REGISTERED.put(Float.class, handler(
+                (PreparedStatement s, int i, Float v) -> s.setFloat(i, v),
+                (rs, c) -> {
+                    float value = rs.getFloat(c);
+                    return rs.wasNull() ? null : value;
+                }));
+        REGISTERED.put(Boolean.class, handler(
+                (PreparedStatement s, int i, Boolean v) -> s.setBoolean(i, v),
+                (rs, c) -> {
+                    boolean value = rs.getBoolean(c);
+                    return rs.wasNull() ? null : value;
+                }));
+        REGISTERED.put(BigDecimal.class, handler(PreparedStatement::setBigDecimal, ResultSet::getBigDecimal));
+        REGISTERED.put(BigInteger.class, handler(
+                (PreparedStatement s, int i, BigInteger v) -> s.setBigDecimal(i, new BigDecimal(v)),
+                (rs, c) -> {
+                    BigDecimal value = rs.getBigDecimal(c);
+                    return value == null ? null : value.toBigInteger();
+                }));
+        REGISTERED.put(byte[].class, handler(PreparedStatement::setBytes, ResultSet::getBytes));
+        REGISTERED.put(Timestamp.class, handler(PreparedStatement::setTimestamp, ResultSet::getTimestamp));
+        REGISTERED.put(Date.class, handler(PreparedStatement::setDate, ResultSet::getDate));
+        REGISTERED.put(Time.class, handler(PreparedStatement::setTime, ResultSet::getTime));
+        REGISTERED.put(java.util.Date.class, handler(
+                (PreparedStatement s, int i, java.util.Date v) -> s.setTimestamp(i, new Timestamp(v.getTime())),
+                (rs, c) -> {
+                    Timestamp value = rs.getTimestamp(c);
+                    return value == null ? null : new java.util.Date(value.getTime());
+                }));
+        REGISTERED.put(LocalDateTime.class, handler(
+                (PreparedStatement s, int i, LocalDateTime v) -> s.setTimestamp(i, Timestamp.valueOf(v)),
+                (rs, c) -> {
+                    Timestamp value = rs.getTimestamp(c);
+                    return value == null ? null : value.toLocalDateTime();
+                }));
+        REGISTERED.put(LocalDate.class, handler(
+                (PreparedStatement s, int i, LocalDate v) -> s.setDate(i, Date.valueOf(v)),
+                (rs, c) -> {
+                    Date value = rs.getDate(c);
+                    return value == null ? null : value.toLocalDate();
+                }));
+        REGISTERED.put(LocalTime.class, handler(
+                (PreparedStatement s, int i, LocalTime v) -> s.setTime(i, Time.valueOf(v)),
+                (rs, c) -> {
+                    Time value = rs.getTime(c);
+                    return value == null ? null : value.toLocalTime();
+                }));
+        REGISTERED.put(Instant.class, handler(
+                (PreparedStatement s, int i, Instant v) -> s.setTimestamp(i, Timestamp.from(v)),
+                (rs, c) -> {
+                    Timestamp value = rs.getTimestamp(c);
+                    return value == null ? null : value.toInstant();
+                }));
+    }
+
+    /**
+     * 注册类型处理器，覆盖内置的处理器
+     */
+    public static <T> void register(Class<T> type, TypeHandler<? super T> typeHandler) {
+        REGISTERED.put(type, typeHandler);
+        RESOLVED.remove(type);
+    }
+
+    /**
+     * 获取类型的处理器
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> TypeHandler<T> get(Class<T> type) {
+        return (TypeHandler<T>) RESOLVED.get(type);
+    }
+
+    /**
+     * 创建 @Column 注解指定的处理器：优先使用以字段类型为参数的构造方法（例如枚举处理器），其次使用无参构造方法
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static TypeHandler<?> newInstance(Class<? extends TypeHandler> handlerClass, Class<?> fieldType) {
+        try {
+            try {
+                return handlerClass.getConstructor(Class.class).newInstance(fieldType);
+            } catch (NoSuchMethodException e) {
+                return handlerClass.getConstructor().newInstance();
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("无法创建类型处理器[" + handlerClass.getName() + "]", e);
+        }
+    }
+
+    /**
+     * 按参数值的类型绑定参数，空值使用 setObject(index, null)
+     */
+    @SuppressWarnings("unchecked")
+    public static void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+        if (value == null) {
+            statement.setObject(index, null);
+        } else if (value instanceof TypedValue) {
+            ((TypedValue) value).bind(statement, index);
+        } else {
+            ((TypeHandler<Object>) RESOLVED.get(value.getClass())).setParameter(statement, index, value);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static TypeHandler<?> resolve(Class<?> type) {
+        Class<?> lookupType = WRAPPERS.containsKey(type) ? WRAPPERS.get(type) : type;
+        TypeHandler<?> typeHandler = REGISTERED.get(lookupType);
+        if (typeHandler != null) {
+            return typeHandler;
+        }
+        if (lookupType.isEnum()) {
+            return new EnumTypeHandler(lookupType);
+        }
+        if (lookupType.getSuperclass() != null && lookupType.getSuperclass().isEnum()) {
+            // 带方法体的枚举常量是枚举类的匿名子类
+            return RESOLVED.get(lookupType.getSuperclass());
+        }
+        for (Class<?> current = lookupType; current != null; current = current.getSuperclass()) {
+            if (current != lookupType && REGISTERED.containsKey(current)) {
+                return REGISTERED.get(current);
+            }
+            for (Class<?> anInterface : current.getInterfaces()) {
+                if (REGISTERED.containsKey(anInterface)) {
+                    return REGISTERED.get(anInterface);
+                }
+            }
+        }
+        return new ObjectTypeHandler(lookupType);
+    }
+
+    private static <T> TypeHandler<T> handler(Binder<T> binder, Reader<T> reader) {
+        return new TypeHandler<T>() {
+            @Override
+            public void setParameter(PreparedStatement statement, int index, T value) throws SQLException {
+                binder.bind(statement, index, value);
+            }
+
+            @Override
+            public T getResult(ResultSet resultSet, int column) throws SQLException {
+                return reader.read(resultSet, column);
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface Binder<T> {
+        void bind(PreparedStatement statement, int index, T value) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface Reader<T> {
+        T read(ResultSet resultSet, int column) throws SQLException;
+    }
+
+    /**
+     * 没有对应处理器的类型：使用 setObject/getObject，读取的值类型不符时使用 getObject(column, type) 由驱动转换
+     */
+    private static class ObjectTypeHandler implements TypeHandler<Object> {
+
+        private final Class<?> type;
+
+        ObjectTypeHandler(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public void setParameter(PreparedStatement statement, int index, Object value) throws SQLException {
+            statement.setObject(index, value);
+        }
+
+        @Override
+        public Object getResult(ResultSet resultSet, int column) throws SQLException {
+            Object value = resultSet.getObject(column);
+            if (value == null || type == Object.class || type.isInstance(value)) {
+                return value;
+            }
+            return resultSet.getObject(column, type);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.wp.type;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * 指定了类型处理器的参数，绑定时使用该处理器而不是按值的类型查找
+ * @author 翁鹏
+ */
+public final class TypedValue {
+
+    private final Object value;
+
+    private final TypeHandler<Object> typeHandler;
+
+    @SuppressWarnings("unchecked")
+    public TypedValue(Object value, TypeHandler<?> typeHandler) {
+        this.value = value;
+        this.typeHandler = (TypeHandler<Object>) typeHandler;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    void bind(PreparedStatement statement, int index) throws SQLException {
+        if (value == null) {
+            statement.setObject(index, null);
+        } else {
+            typeHandler.setParameter(statement, index, value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(value);
+    }
+}
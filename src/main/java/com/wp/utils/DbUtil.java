@@ -1,14 +1,27 @@
 package com.wp.utils;
 
+import com.alibaba.druid.pool.DruidDataSource;
 import com.alibaba.druid.pool.DruidDataSourceFactory;
+import com.wp.columnar.ColumnarResult;
+import com.wp.common.DbSession;
+import com.wp.common.Dialect;
+import com.wp.common.EntityCursor;
+import com.wp.common.RowMapper;
+import com.wp.metrics.OrmMetrics;
+import com.wp.metrics.StatementContext;
+import com.wp.metrics.StatementType;
+import com.wp.routing.RoutingDataSource;
+import com.wp.type.TypeHandlers;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.sql.DataSource;
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -20,6 +33,9 @@ import java.util.Properties;
  * 5. 开启事务
  * 6. 提交事务
  * 7. 回滚事务
+ * 当前线程存在 DbSession 时，所有操作复用会话的连接
+ * 每条语句的耗时和行数记录到 OrmMetrics 中
+ * 数据源是 RoutingDataSource 时，会话外的查询使用从库，写操作和会话中的操作使用主库
  * @author 翁鹏
  */
 @Slf4j
@@ -27,7 +43,15 @@ public class DbUtil {
 
     // 获得数据源的配置文件
     private static Properties properties = new Properties();
-    private static DataSource dataSource = null;
+    private static volatile DataSource dataSource = null;
+    // 数据源对应的数据库方言，首次使用时检测
+    private static final Map<DataSource, Dialect> DIALECTS = new ConcurrentHashMap<>();
+    // 数据源的 MySQL 连接是否开启了 useAffectedRows，首次使用时检测
+    private static final Map<DataSource, Boolean> USE_AFFECTED_ROWS = new ConcurrentHashMap<>();
+    // 按名称注册的数据源，例如分片使用的多个数据库
+    private static final Map<String, DataSource> NAMED_DATA_SOURCES = new ConcurrentHashMap<>();
+    // 当前线程执行语句时使用的数据源，为null时使用默认数据源
+    private static final ThreadLocal<DataSource> ROUTED_DATA_SOURCE = new ThreadLocal<>();
 
 
     // 静态代码块，加载配置文件
@@ -40,6 +64,163 @@ public class DbUtil {
         }
     }
 
+    /**
+     * 设置数据源，替换 druid.properties 中配置的数据源（例如测试或基准测试时使用内存数据库）
+     */
+    public static void setDataSource(DataSource dataSource) {
+        DbUtil.dataSource = dataSource;
+        DIALECTS.clear();
+        USE_AFFECTED_ROWS.clear();
+    }
+
+    /**
+     * 获取数据源
+     */
+    public static DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * 按名称注册数据源
+     */
+    public static void registerDataSource(String name, DataSource dataSource) {
+        NAMED_DATA_SOURCES.put(name, dataSource);
+    }
+
+    /**
+     * 按名称获取注册的数据源
+     */
+    public static DataSource getDataSource(String name) {
+        DataSource named = NAMED_DATA_SOURCES.get(name);
+        if (named == null) {
+            throw new IllegalStateException("没有找到数据源[" + name + "]");
+        }
+        return named;
+    }
+
+    /**
+     * 捕获当前线程的执行上下文（withDataSource 指定的数据源以及读写分离的路由状态），
+     * 返回在其他线程中以同样的上下文执行操作的任务
+     */
+    public static <R> Callable<R> propagate(SqlAction<R> action) {
+        DataSource routed = ROUTED_DATA_SOURCE.get();
+        RoutingDataSource.RoutingContext routing = RoutingDataSource.capture();
+        return () -> {
+            RoutingDataSource.ContextScope scope = routing.apply();
+            try {
+                return withDataSource(routed, action);
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    /**
+     * 在指定的数据源上执行操作，期间当前线程的所有语句都使用该数据源
+     * @param target 为null时使用默认数据源
+     */
+    public static <R> R withDataSource(DataSource target, SqlAction<R> action) throws SQLException {
+        if (target == null) {
+            return action.execute();
+        }
+        DataSource previous = ROUTED_DATA_SOURCE.get();
+        ROUTED_DATA_SOURCE.set(target);
+        try {
+            return action.execute();
+        } finally {
+            if (previous == null) {
+                ROUTED_DATA_SOURCE.remove();
+            } else {
+                ROUTED_DATA_SOURCE.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 当前数据源的最大连接数，读写分离时取主库，不是 Druid 连接池时返回 Integer.MAX_VALUE
+     */
+    public static int getMaxActive() {
+        DataSource current = currentDataSource();
+        if (current instanceof RoutingDataSource) {
+            current = ((RoutingDataSource) current).getPrimary();
+        }
+        return maxActiveOf(current);
+    }
+
+    /**
+     * 当前数据源读操作可用的最大连接数，读写分离时取实际提供读连接的从库中最小的最大连接数（读主库时取主库）
+     */
+    public static int getMaxReadActive() {
+        DataSource current = currentDataSource();
+        if (!(current instanceof RoutingDataSource)) {
+            return maxActiveOf(current);
+        }
+        int maxActive = Integer.MAX_VALUE;
+        for (DataSource readDataSource : ((RoutingDataSource) current).getReadDataSources()) {
+            maxActive = Math.min(maxActive, maxActiveOf(readDataSource));
+        }
+        return maxActive;
+    }
+
+    private static int maxActiveOf(DataSource dataSource) {
+        return dataSource instanceof DruidDataSource ? ((DruidDataSource) dataSource).getMaxActive() : Integer.MAX_VALUE;
+    }
+
+    /**
+     * 获取当前线程执行语句使用的数据源（withDataSource 指定的数据源或默认数据源）
+     */
+    public static DataSource getCurrentDataSource() {
+        return currentDataSource();
+    }
+
+    /**
+     * 当前线程执行语句使用的数据源
+     */
+    private static DataSource currentDataSource() {
+        DataSource routed = ROUTED_DATA_SOURCE.get();
+        return routed != null ? routed : dataSource;
+    }
+
+    /**
+     * 获取当前线程使用的数据源（withDataSource 指定的数据源或默认数据源）的数据库方言，每个数据源首次调用时通过连接的元数据检测
+     */
+    public static Dialect getDialect() throws SQLException {
+        DataSource target = currentDataSource();
+        Dialect current = DIALECTS.get(target);
+        if (current == null) {
+            Connection connection = null;
+            try {
+                connection = acquireConnection();
+                current = Dialect.of(connection.getMetaData().getDatabaseProductName());
+            } finally {
+                releaseConnection(connection, null, null);
+            }
+            DIALECTS.put(target, current);
+        }
+        return current;
+    }
+
+    /**
+     * 判断当前线程使用的数据源的连接地址是否开启了 MySQL 的 useAffectedRows=true，每个数据源首次调用时通过连接的元数据检测
+     * 未开启时 MySQL 返回的是匹配的行数，insert ... on duplicate key update 值没有变化的行也返回1
+     */
+    public static boolean isUseAffectedRows() throws SQLException {
+        DataSource target = currentDataSource();
+        Boolean current = USE_AFFECTED_ROWS.get(target);
+        if (current == null) {
+            Connection connection = null;
+            try {
+                connection = acquireConnection();
+                String url = connection.getMetaData().getURL();
+                current = url != null && url.toLowerCase().contains("useaffectedrows=true");
+            } finally {
+                releaseConnection(connection, null, null);
+            }
+            USE_AFFECTED_ROWS.put(target, current);
+        }
+        return current;
+    }
+
     /**
      * 获取数据库连接
      */
@@ -77,85 +258,297 @@ public class DbUtil {
         }
     }
 
+    /**
+     * 获取执行语句使用的连接：当前线程有会话时使用会话的连接，否则从连接池获取
+     */
+    private static Connection acquireConnection() throws SQLException {
+        DbSession session = DbSession.current();
+        DataSource current = currentDataSource();
+        return session != null ? session.getConnection(current) : current.getConnection();
+    }
+
+    /**
+     * 获取读操作使用的连接：有会话时使用会话的连接（主库），数据源是读写分离数据源时按负载均衡使用从库
+     */
+    private static Connection acquireReadConnection() throws SQLException {
+        DbSession session = DbSession.current();
+        DataSource current = currentDataSource();
+        if (session != null) {
+            return session.getConnection(current);
+        }
+        return current instanceof RoutingDataSource ? ((RoutingDataSource) current).getReadConnection() : current.getConnection();
+    }
+
+    /**
+     * 记录当前线程执行了写操作，读写分离时用于写后读主库
+     */
+    private static void markWrite() {
+        if (currentDataSource() instanceof RoutingDataSource) {
+            RoutingDataSource.markWrite();
+        }
+    }
+
+    /**
+     * 释放执行语句使用的连接：会话的连接由会话负责关闭，这里只关闭语句和结果集
+     */
+    private static void releaseConnection(Connection connection, PreparedStatement statement, ResultSet resultSet) {
+        DbSession session = DbSession.current();
+        closeConnection(session != null && session.owns(connection) ? null : connection, statement, resultSet);
+    }
+
+    /**
+     * 设置语句参数
+     */
+    private static void setParams(PreparedStatement statement, Object[] params) throws SQLException {
+        if (params != null) {
+            for (int i = 0; i < params.length; i++) {
+                // 按参数类型使用 setInt/setString/setTimestamp 等方法绑定
+                TypeHandlers.bind(statement, i + 1, params[i]);
+            }
+        }
+    }
+
     /**
      * 执行查询操作
+     * 不在会话中时以自动提交方式执行，不切换事务
      */
     public static <T>  List<T> executeQuery(Class<T> clazz,String sql , Object... params) throws SQLException {
         Connection connection = null;
         PreparedStatement statement = null;
         ResultSet resultSet = null;
-        List<T> list = new ArrayList<>();
+        StatementContext context = OrmMetrics.begin(StatementType.QUERY, sql, params, 1);
         try {
-            connection = getConnection();
-            // 开启事务
-            connection.setAutoCommit(false);
+            connection = acquireReadConnection();
+            context.acquired();
+            statement = connection.prepareStatement(sql);
+            // 设置查询参数
+            setParams(statement, params);
+            resultSet = statement.executeQuery();
+            context.executed(0);
+            // 将将ResultSet转换为List<T> ，因为connection关闭后，resultSet也会关闭，所以在这里转换
+            List<T> list = resultSetToList(clazz, resultSet);
+            context.mapped(list.size());
+            return list;
+        } catch (SQLException | RuntimeException e) {
+            context.failed(e);
+            throw e;
+        } finally {
+            releaseConnection(connection, statement, resultSet);
+            OrmMetrics.end(context);
+        }
+    }
 
+    /**
+     * 执行列式查询，数值列直接读取到基本类型数组中，不为每行创建对象
+     */
+    public static ColumnarResult executeColumnar(String sql, Object... params) throws SQLException {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        StatementContext context = OrmMetrics.begin(StatementType.QUERY, sql, params, 1);
+        try {
+            connection = acquireReadConnection();
+            context.acquired();
             statement = connection.prepareStatement(sql);
+            // 设置查询参数
+            setParams(statement, params);
+            resultSet = statement.executeQuery();
+            context.executed(0);
+            ColumnarResult result = ColumnarResult.read(resultSet);
+            context.mapped(result.getRowCount());
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            context.failed(e);
+            throw e;
+        } finally {
+            releaseConnection(connection, statement, resultSet);
+            OrmMetrics.end(context);
+        }
+    }
 
-            if (params != null) {
-                // 设置查询参数
-                for (int i = 0; i < params.length; i++) {
-                    statement.setObject(i + 1, params[i]);
-                }
-            }
+    /**
+     * 执行流式查询，返回的游标逐行映射对象，内存占用与结果集大小无关
+     * MySQL 在未开启 useCursorFetch 时使用 Integer.MIN_VALUE 逐行流式读取，
+     * 开启后以及其他数据库使用 fetchSize 作为服务端游标每次拉取的行数
+     * 注意：MySQL 流式读取期间该连接不能执行其他语句
+     */
+    public static <T> EntityCursor<T> executeCursor(Class<T> clazz, int fetchSize, String sql, Object... params) throws SQLException {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        StatementContext context = OrmMetrics.begin(StatementType.CURSOR, sql, params, 1);
+        try {
+            connection = acquireReadConnection();
+            context.acquired();
+            statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(resolveFetchSize(connection, fetchSize));
+            // 设置查询参数
+            setParams(statement, params);
             resultSet = statement.executeQuery();
-            connection.commit(); // 提交事务
+            context.executed(0);
+            // 会话的连接由会话负责关闭，游标只关闭语句和结果集
+            DbSession session = DbSession.current();
+            Connection owned = session != null && session.owns(connection) ? null : connection;
+            return new EntityCursor<>(clazz, owned, statement, resultSet);
+        } catch (SQLException | RuntimeException e) {
+            context.failed(e);
+            releaseConnection(connection, statement, resultSet);
+            throw e;
+        } finally {
+            OrmMetrics.end(context);
+        }
+    }
 
-            // 将将ResultSet转换为List<T> ，因为connection关闭后，resultSet也会关闭，所以在这里转换
-            list = resultSetToList(clazz, resultSet);
+    /**
+     * 根据数据库类型确定流式读取的 fetchSize
+     */
+    private static int resolveFetchSize(Connection connection, int fetchSize) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        if ("MySQL".equalsIgnoreCase(metaData.getDatabaseProductName())
+                && !String.valueOf(metaData.getURL()).contains("useCursorFetch=true")) {
+            return Integer.MIN_VALUE;
+        }
+        return fetchSize;
+    }
 
-            log.info("【 执行sql ："+ sql+" 】");
-            log.info("【 params ："+ Arrays.toString(params) +" 】");
-        } catch (SQLException e) {
-            if (connection != null) {
-                connection.rollback(); // 回滚事务
-            }
+    /**
+     * 执行更新操作
+     * 不在会话中时单条语句以自动提交方式执行；在会话中时由会话统一提交
+     */
+    public static int executeUpdate(String sql, Object... params) throws SQLException {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        StatementContext context = OrmMetrics.begin(StatementType.UPDATE, sql, params, 1);
+        try {
+            connection = acquireConnection();
+            context.acquired();
+            statement = connection.prepareStatement(sql);
+            // 设置更新参数
+            setParams(statement, params);
+            int rowsAffected = statement.executeUpdate();
+            markWrite();
+            context.executed(rowsAffected);
+            return rowsAffected;
+        } catch (SQLException | RuntimeException e) {
+            context.failed(e);
             throw e;
         } finally {
-            if (connection != null) {
-                // 恢复自动提交
-                connection.setAutoCommit(true);
+            releaseConnection(connection, statement, null);
+            OrmMetrics.end(context);
+        }
+    }
+
+    /**
+     * 执行insert操作并读取数据库生成的主键
+     * @param generatedKeys 按行的顺序放入生成的主键
+     */
+    public static int executeInsert(String sql, List<Object> generatedKeys, Object... params) throws SQLException {
+        Connection connection = null;
+        PreparedStatement statement = null;
+        StatementContext context = OrmMetrics.begin(StatementType.UPDATE, sql, params, 1);
+        try {
+            connection = acquireConnection();
+            context.acquired();
+            statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            // 设置更新参数
+            setParams(statement, params);
+            int rowsAffected = statement.executeUpdate();
+            markWrite();
+            readGeneratedKeys(statement, generatedKeys);
+            context.executed(rowsAffected);
+            return rowsAffected;
+        } catch (SQLException | RuntimeException e) {
+            context.failed(e);
+            throw e;
+        } finally {
+            releaseConnection(connection, statement, null);
+            OrmMetrics.end(context);
+        }
+    }
+
+    /**
+     * 读取语句生成的主键
+     */
+    private static void readGeneratedKeys(PreparedStatement statement, List<Object> generatedKeys) throws SQLException {
+        try (ResultSet keys = statement.getGeneratedKeys()) {
+            while (keys != null && keys.next()) {
+                generatedKeys.add(keys.getObject(1));
             }
-            closeConnection(connection, statement, null);
         }
-        return list;
+    }
 
+    /**
+     * 批量执行更新操作，每 batchSize 条参数执行一次 executeBatch
+     * 不在会话中时每批提交一次事务，某一批执行失败时只回滚该批，之前已提交的批次不受影响；
+     * 在会话中时由会话统一提交
+     * @return 每组参数对应的受影响行数
+     */
+    public static int[] executeBatch(String sql, List<Object[]> paramsList, int batchSize) throws SQLException {
+        return executeBatch(sql, paramsList, batchSize, null);
     }
 
     /**
-     * 执行更新操作
+     * 批量执行insert操作并读取数据库生成的主键
+     * 驱动不支持批处理返回主键时，generatedKeys 的数量会少于参数的组数
+     * @param generatedKeys 按行的顺序放入生成的主键，为null时不读取
+     * @return 每组参数对应的受影响行数
      */
-    public static int executeUpdate(String sql, Object... params) throws SQLException {
+    public static int[] executeBatch(String sql, List<Object[]> paramsList, int batchSize, List<Object> generatedKeys) throws SQLException {
+        DbSession session = DbSession.current();
         Connection connection = null;
         PreparedStatement statement = null;
-        int rowsAffected = 0;
+        int[] rowsAffected = new int[paramsList.size()];
+        StatementContext context = OrmMetrics.begin(StatementType.BATCH, sql, null, paramsList.size());
 
         try {
-            connection = getConnection();
-            // 开启事务
-            connection.setAutoCommit(false);
+            connection = acquireConnection();
+            context.acquired();
+            if (session == null) {
+                // 开启事务
+                connection.setAutoCommit(false);
+            }
 
-            statement = connection.prepareStatement(sql);
+            statement = generatedKeys == null
+                    ? connection.prepareStatement(sql)
+                    : connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
 
-            // 设置更新参数
-            for (int i = 0; i < params.length; i++) {
-                statement.setObject(i + 1, params[i]);
+            int offset = 0;
+            while (offset < paramsList.size()) {
+                int end = Math.min(offset + batchSize, paramsList.size());
+                for (int i = offset; i < end; i++) {
+                    // 设置更新参数
+                    setParams(statement, paramsList.get(i));
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                markWrite();
+                if (generatedKeys != null) {
+                    readGeneratedKeys(statement, generatedKeys);
+                }
+                if (session == null) {
+                    connection.commit(); // 每批提交一次事务
+                }
+                System.arraycopy(counts, 0, rowsAffected, offset, counts.length);
+                offset = end;
             }
-            rowsAffected = statement.executeUpdate();
-            connection.commit(); // 提交事务
-            log.info("【 执行sql ："+ sql+" 】");
-            log.info("【 params ："+ Arrays.toString(params) +" 】");
+            long affected = 0;
+            for (int count : rowsAffected) {
+                affected += Math.max(count, 0);
+            }
+            context.executed(affected);
         } catch (SQLException e) {
-            if (connection != null) {
+            context.failed(e);
+            if (connection != null && session == null) {
                 connection.rollback(); // 回滚事务
             }
             throw e;
         } finally {
-            if (connection != null) {
+            if (connection != null && session == null) {
                 // 恢复自动提交
                 connection.setAutoCommit(true);
             }
-            closeConnection(connection, statement, null);
+            releaseConnection(connection, statement, null);
+            OrmMetrics.end(context);
         }
 
         return rowsAffected;
@@ -166,23 +559,19 @@ public class DbUtil {
      */
     public static <T> List<T> resultSetToList(Class<T> clazz, ResultSet resultSet) throws SQLException {
         List<T> list = new ArrayList<>();
-        try {
-            // 获取ResultSet的列数
-            ResultSetMetaData metaData = resultSet.getMetaData();
-            int columnCount = metaData.getColumnCount();
-            while (resultSet.next()) {
-                T t = ReflectUtil.newInstance(clazz);
-                for (int i = 0; i < columnCount; i++) {
-                    String columnName = metaData.getColumnName(i + 1);
-                    Object columnValue = resultSet.getObject(i + 1);
-                    ReflectUtil.setFieldValueByColumn(t, columnName, columnValue);
-                }
-                list.add(t);
-            }
-        } catch (SQLException e) {
-            throw e;
+        // 获取按结果集形状编译好的行映射器
+        RowMapper<T> rowMapper = RowMapper.of(clazz, resultSet.getMetaData());
+        while (resultSet.next()) {
+            list.add(rowMapper.mapRow(resultSet));
         }
         return list;
     }
 
+    /**
+     * 在指定数据源上执行的操作
+     */
+    @FunctionalInterface
+    public interface SqlAction<R> {
+        R execute() throws SQLException;
+    }
 }
@@ -2,9 +2,16 @@ package com.wp.utils;
 
 import com.wp.common.AnnotationParser;
 import com.wp.common.ColumnInfo;
+import com.wp.common.FieldAccessor;
 
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
-import java.util.List;
+import java.lang.reflect.Method;
 
 /**
  * 反射工具类
@@ -16,6 +23,11 @@ public class ReflectUtil {
      */
     public static Object getFieldValue(Object obj, String fieldName) {
         try {
+            // 优先使用缓存的字段访问器
+            ColumnInfo columnInfo = AnnotationParser.getEntityPlan(obj.getClass()).getColumnByField(fieldName);
+            if (columnInfo != null) {
+                return columnInfo.getAccessor().get(obj);
+            }
             // 获取类
             Class<?> clazz = obj.getClass();
             // 获取字段
@@ -48,25 +60,250 @@ public class ReflectUtil {
      */
     public static <T> void setFieldValueByColumn(T dao, String columnName, Object fieldValue) {
         try {
-            // 获取类
-            Class<?> clazz = dao.getClass();
-            // 获取类的所有字段信息
-            List<ColumnInfo> columnsInfo = AnnotationParser.getColumnsInfo(clazz);
-            for (ColumnInfo columnInfo : columnsInfo) {
-                // 找到对应的字段
-                if (columnInfo.getColumnName().equals(columnName)) {
-                    // 获取字段
-                    Field field = clazz.getDeclaredField(columnInfo.getFieldName());
-                    // 设置可访问
-                    field.setAccessible(true);
-                    // 设置字段值
-                    field.set(dao, fieldValue);
+            // 找到对应的字段
+            ColumnInfo columnInfo = AnnotationParser.getEntityPlan(dao.getClass()).getColumnByName(columnName);
+            if (columnInfo != null) {
+                // 设置字段值
+                columnInfo.getAccessor().set(dao, fieldValue);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 创建字段访问器
+     * 优先使用 MethodHandle，不允许反射访问私有字段时退回到公共的 getter/setter 方法
+     */
+    public static FieldAccessor createAccessor(Field field) {
+        try {
+            field.setAccessible(true);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle getter = lookup.unreflectGetter(field)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            MethodHandle rawSetter = lookup.unreflectSetter(field);
+            MethodHandle setter = rawSetter
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            if (field.getType().isPrimitive()) {
+                // 基本类型字段额外保存一个按原始类型写入的句柄，读取结果集时不装箱
+                MethodHandle primitiveSetter = rawSetter
+                        .asType(MethodType.methodType(void.class, Object.class, field.getType()));
+                return new PrimitiveMethodHandleAccessor(getter, setter, primitiveSetter, field.getType());
+            }
+            return new MethodHandleAccessor(getter, setter, false);
+        } catch (RuntimeException | IllegalAccessException e) {
+            // 例如安全管理器或模块系统禁止 setAccessible
+            return createPropertyAccessor(field);
+        }
+    }
+
+    /**
+     * 使用公共的 getter/setter 方法创建字段访问器
+     */
+    private static FieldAccessor createPropertyAccessor(Field field) {
+        Method readMethod = null;
+        Method writeMethod = null;
+        try {
+            for (PropertyDescriptor descriptor : Introspector.getBeanInfo(field.getDeclaringClass()).getPropertyDescriptors()) {
+                if (descriptor.getName().equals(field.getName())) {
+                    readMethod = descriptor.getReadMethod();
+                    writeMethod = descriptor.getWriteMethod();
                     break;
                 }
             }
-        } catch (Exception e) {
+        } catch (IntrospectionException e) {
             e.printStackTrace();
         }
+        if (readMethod == null || writeMethod == null) {
+            throw new IllegalStateException("无法访问字段[" + field.getDeclaringClass().getName() + "." + field.getName() + "]");
+        }
+        return new PropertyAccessor(readMethod, writeMethod, field.getType().isPrimitive());
+    }
+
+    /**
+     * 基于 MethodHandle 的字段访问器
+     */
+    private static class MethodHandleAccessor implements FieldAccessor {
+
+        private final MethodHandle getter;
+
+        private final MethodHandle setter;
+
+        private final boolean primitive;
+
+        MethodHandleAccessor(MethodHandle getter, MethodHandle setter, boolean primitive) {
+            this.getter = getter;
+            this.setter = setter;
+            this.primitive = primitive;
+        }
+
+        @Override
+        public Object get(Object target) {
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void set(Object target, Object value) {
+            if (value == null && primitive) {
+                return;
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * 基本类型字段的访问器，setInt/setLong 等方法按字段的原始类型直接写入
+     * 结果集的类型与字段类型不同时（例如 int 字段读取 long），退回到装箱写入
+     */
+    private static class PrimitiveMethodHandleAccessor extends MethodHandleAccessor {
+
+        private final MethodHandle primitiveSetter;
+
+        private final Class<?> type;
+
+        PrimitiveMethodHandleAccessor(MethodHandle getter, MethodHandle setter, MethodHandle primitiveSetter, Class<?> type) {
+            super(getter, setter, true);
+            this.primitiveSetter = primitiveSetter;
+            this.type = type;
+        }
+
+        @Override
+        public void setInt(Object target, int value) {
+            if (type != int.class) {
+                set(target, value);
+                return;
+            }
+            try {
+                primitiveSetter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void setLong(Object target, long value) {
+            if (type != long.class) {
+                set(target, value);
+                return;
+            }
+            try {
+                primitiveSetter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void setDouble(Object target, double value) {
+            if (type != double.class) {
+                set(target, value);
+                return;
+            }
+            try {
+                primitiveSetter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void setFloat(Object target, float value) {
+            if (type != float.class) {
+                set(target, value);
+                return;
+            }
+            try {
+                primitiveSetter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void setShort(Object target, short value) {
+            if (type != short.class) {
+                set(target, value);
+                return;
+            }
+            try {
+                primitiveSetter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void setByte(Object target, byte value) {
+            if (type != byte.class) {
+                set(target, value);
+                return;
+            }
+            try {
+                primitiveSetter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void setBoolean(Object target, boolean value) {
+            if (type != boolean.class) {
+                set(target, value);
+                return;
+            }
+            try {
+                primitiveSetter.invokeExact(target, value);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * 基于 getter/setter 方法的字段访问器
+     */
+    private static class PropertyAccessor implements FieldAccessor {
+
+        private final Method readMethod;
+
+        private final Method writeMethod;
+
+        private final boolean primitive;
+
+        PropertyAccessor(Method readMethod, Method writeMethod, boolean primitive) {
+            this.readMethod = readMethod;
+            this.writeMethod = writeMethod;
+            this.primitive = primitive;
+        }
+
+        @Override
+        public Object get(Object target) {
+            try {
+                return readMethod.invoke(target);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void set(Object target, Object value) {
+            if (value == null && primitive) {
+                return;
+            }
+            try {
+                writeMethod.invoke(target, value);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
     }
 
 
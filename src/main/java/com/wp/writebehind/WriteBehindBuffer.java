@@ -0,0 +1,432 @@
+package com.wp.writebehind;
+
+import com.wp.common.AnnotationParser;
+import com.wp.common.DbTemplate;
+import com.wp.common.EntityPlan;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 异步写缓冲区（write-behind）：save / update / delete 先放入有界的无锁队列，由后台线程批量写入
+ * 队列中的条数达到 flushSize 或距上次写入超过 flushIntervalMillis 时写入一次，
+ * 同一主键的连续操作先合并（例如多次 update 合并各次的非空字段后写一次，save 后 delete 不写入），
+ * 合并后按 saveAll / updateAll / deleteAll 使用JDBC批处理在一个事务中写入
+ * 队列已满时调用方等待，超过 maxBlockMillis 抛出异常；关闭或JVM退出时写入剩余的操作
+ * 写入是异步的，写入前进程崩溃会丢失队列中的操作，只适合可以接受短暂延迟和少量丢失的场景
+ * 在开启了 DbSession 的线程中调用 flush（或 close）时，写入加入该线程的会话，随会话提交或回滚
+ * @author 翁鹏
+ */
+@Slf4j
+public class WriteBehindBuffer implements AutoCloseable {
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    /**
+     * 合并后两个操作互相抵消，例如 save 后 delete
+     */
+    private static final WriteOperation CANCELLED = new WriteOperation(WriteOperation.Kind.DELETE, null);
+
+    private final DbTemplate dbTemplate;
+
+    /**
+     * 队列容量
+     */
+    private final int capacity;
+
+    /**
+     * 队列中的条数达到该值时立即写入
+     */
+    private final int flushSize;
+
+    private final long flushIntervalNanos;
+
+    /**
+     * 队列已满时调用方最多等待的时间
+     */
+    private volatile long maxBlockMillis = 5000;
+
+    private volatile WriteErrorHandler errorHandler = (operations, e) ->
+            log.error("写缓冲区写入{}条操作失败", operations.size(), e);
+
+    private final ConcurrentLinkedQueue<WriteOperation> queue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 队列中的条数，入队前先通过CAS占位，保证不超过容量
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * 写入时加锁，后台线程和 flush 不会同时写入，保证写入顺序与入队顺序一致
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final Thread flusher;
+
+    private final Thread shutdownHook;
+
+    private volatile boolean closed;
+
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * @param dbTemplate 执行写入的 DbTemplate
+     * @param capacity 队列容量
+     * @param flushSize 队列中的条数达到该值时立即写入
+     * @param flushIntervalMillis 最长写入间隔，单位为毫秒
+     */
+    public WriteBehindBuffer(DbTemplate dbTemplate, int capacity, int flushSize, long flushIntervalMillis) {
+        if (capacity <= 0 || flushSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("capacity、flushSize和flushIntervalMillis必须大于0");
+        }
+        this.dbTemplate = dbTemplate;
+        this.capacity = capacity;
+        this.flushSize = Math.min(flushSize, capacity);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.flusher = new Thread(this::runFlusher, "orm-write-behind-" + THREAD_COUNT.incrementAndGet());
+        this.flusher.setDaemon(true);
+        this.shutdownHook = new Thread(this::close, flusher.getName() + "-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        this.flusher.start();
+    }
+
+    public long getMaxBlockMillis() {
+        return maxBlockMillis;
+    }
+
+    public void setMaxBlockMillis(long maxBlockMillis) {
+        this.maxBlockMillis = maxBlockMillis;
+    }
+
+    public void setErrorHandler(WriteErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * 异步保存对象
+     */
+    public void save(Object dao) {
+        enqueue(new WriteOperation(WriteOperation.Kind.SAVE, dao));
+    }
+
+    /**
+     * 异步更新对象
+     */
+    public void update(Object dao) {
+        enqueue(new WriteOperation(WriteOperation.Kind.UPDATE, dao));
+    }
+
+    /**
+     * 异步删除对象
+     */
+    public void delete(Object dao) {
+        enqueue(new WriteOperation(WriteOperation.Kind.DELETE, dao));
+    }
+
+    /**
+     * 尝试放入写操作，队列已满时立即返回false
+     * 入队后发现已经关闭时（与 close 并发），close 的最后一次写入可能没有包含该操作，由调用方线程立即写入
+     */
+    public boolean offer(WriteOperation operation) {
+        checkOpen();
+        if (!reserve()) {
+            return false;
+        }
+        queue.offer(operation);
+        enqueuedCount.incrementAndGet();
+        if (closed) {
+            flush();
+        }
+        return true;
+    }
+
+    /**
+     * 放入写操作，队列已满时等待后台线程写入，超过 maxBlockMillis 抛出异常
+     */
+    private void enqueue(WriteOperation operation) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBlockMillis);
+        while (!offer(operation)) {
+            LockSupport.unpark(flusher);
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException("写缓冲区已满，等待" + maxBlockMillis + "毫秒后仍没有空间");
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * 占用一个队列位置，达到 flushSize 时唤醒后台线程
+     */
+    private boolean reserve() {
+        while (true) {
+            int current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                if (current + 1 == flushSize) {
+                    LockSupport.unpark(flusher);
+                }
+                return true;
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("写缓冲区已关闭");
+        }
+    }
+
+    /**
+     * 立即写入队列中的所有操作，返回时这些操作已经写入（或已回调失败处理）
+     * 当前线程开启了 DbSession 时，写入加入该会话的事务而不是各自提交：返回时还没有提交，
+     * 会话回滚时这些操作也被回滚且不会回调失败处理，某一批写入失败时整个会话只能回滚
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<WriteOperation> drained = new ArrayList<>();
+            WriteOperation operation;
+            while ((operation = queue.poll()) != null) {
+                drained.add(operation);
+            }
+            size.addAndGet(-drained.size());
+            if (drained.isEmpty()) {
+                return;
+            }
+            List<List<WriteOperation>> batches;
+            try {
+                batches = coalesce(drained);
+            } catch (RuntimeException e) {
+                // 合并失败（例如读取主键失败）时已取出的操作都无法写入，全部交给失败回调
+                fail(drained, e);
+                return;
+            }
+            for (List<WriteOperation> batch : batches) {
+                write(batch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 后台线程：等待达到 flushSize 或超过写入间隔后写入
+     */
+    private void runFlusher() {
+        long lastFlush = System.nanoTime();
+        while (!closed) {
+            long remaining = lastFlush + flushIntervalNanos - System.nanoTime();
+            if (size.get() < flushSize && remaining > 0) {
+                LockSupport.parkNanos(this, remaining);
+                continue;
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("写缓冲区写入失败", e);
+            }
+            lastFlush = System.nanoTime();
+        }
+    }
+
+    /**
+     * 按主键合并写操作，合并后每批中同一主键只有一个操作
+     * 不能合并的操作（例如 delete 后 save）放入下一批，保证同一主键的操作按顺序写入
+     */
+    private List<List<WriteOperation>> coalesce(List<WriteOperation> operations) {
+        List<List<WriteOperation>> batches = new ArrayList<>();
+        Map<Object, WriteOperation> current = new LinkedHashMap<>();
+        for (WriteOperation operation : operations) {
+            Object key = keyOf(operation.getDao());
+            WriteOperation previous = current.get(key);
+            if (previous == null) {
+                current.put(key, operation);
+                continue;
+            }
+            WriteOperation merged = merge(previous, operation);
+            if (merged == CANCELLED) {
+                current.remove(key);
+            } else if (merged != null) {
+                current.put(key, merged);
+            } else {
+                batches.add(new ArrayList<>(current.values()));
+                current = new LinkedHashMap<>();
+                current.put(key, operation);
+            }
+        }
+        if (!current.isEmpty()) {
+            batches.add(new ArrayList<>(current.values()));
+        }
+        return batches;
+    }
+
+    /**
+     * 合并同一主键的两个操作，不能合并时返回null
+     */
+    private static WriteOperation merge(WriteOperation previous, WriteOperation next) {
+        switch (previous.getKind()) {
+            case SAVE:
+                if (next.getKind() == WriteOperation.Kind.UPDATE) {
+                    // 保存两次操作合并后的对象状态
+                    return new WriteOperation(WriteOperation.Kind.SAVE, mergeDao(previous.getDao(), next.getDao()));
+                }
+                return next.getKind() == WriteOperation.Kind.DELETE ? CANCELLED : null;
+            case UPDATE:
+                if (next.getKind() == WriteOperation.Kind.UPDATE) {
+                    return new WriteOperation(WriteOperation.Kind.UPDATE, mergeDao(previous.getDao(), next.getDao()));
+                }
+                return next.getKind() == WriteOperation.Kind.SAVE ? null : next;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 合并两个对象的字段值：save / update 只写入非空字段，只保留后一个对象会丢失前一个对象中的修改，
+     * 同一个对象直接使用该对象（写入时读取的是最新状态），不同的对象按字段合并，后一个对象的非空字段优先
+     */
+    private static Object mergeDao(Object previous, Object next) {
+        if (previous == next) {
+            return next;
+        }
+        EntityPlan plan = AnnotationParser.getEntityPlan(next.getClass());
+        return plan.newEntity(plan.mergeSnapshot(plan.readValues(previous), plan.readValues(next)));
+    }
+
+    /**
+     * 合并使用的key：实体类 + 主键，主键为空时不合并
+     */
+    private static Object keyOf(Object dao) {
+        Object key = AnnotationParser.getEntityPlan(dao.getClass()).getKey(dao);
+        if (key instanceof Object[]) {
+            Object[] values = (Object[]) key;
+            if (values.length == 0 || Arrays.asList(values).contains(null)) {
+                return new Object();
+            }
+            key = Arrays.asList(values);
+        } else if (key == null) {
+            return new Object();
+        } else if (key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            key = ((Number) key).longValue();
+        }
+        return Arrays.asList(dao.getClass(), key);
+    }
+
+    /**
+     * 在一个事务中写入一批操作，失败时回调 errorHandler
+     */
+    private void write(List<WriteOperation> batch) {
+        List<Object> saves = new ArrayList<>();
+        List<Object> updates = new ArrayList<>();
+        List<Object> deletes = new ArrayList<>();
+        for (WriteOperation operation : batch) {
+            switch (operation.getKind()) {
+                case SAVE:
+                    saves.add(operation.getDao());
+                    break;
+                case UPDATE:
+                    updates.add(operation.getDao());
+                    break;
+                default:
+                    deletes.add(operation.getDao());
+                    break;
+            }
+        }
+        try {
+            dbTemplate.inTransaction(template -> {
+                if (!saves.isEmpty()) {
+                    template.saveAll(saves);
+                }
+                if (!updates.isEmpty()) {
+                    template.updateAll(updates);
+                }
+                if (!deletes.isEmpty()) {
+                    template.deleteAll(deletes);
+                }
+                return null;
+            });
+            writtenCount.addAndGet(batch.size());
+        } catch (Exception e) {
+            fail(batch, e);
+        }
+    }
+
+    /**
+     * 记录失败的操作并回调 errorHandler
+     */
+    private void fail(List<WriteOperation> operations, Exception e) {
+        failedCount.addAndGet(operations.size());
+        try {
+            errorHandler.onError(operations, e);
+        } catch (RuntimeException handlerException) {
+            log.error("写缓冲区的失败回调抛出异常", handlerException);
+        }
+    }
+
+    /**
+     * 队列中等待写入的操作数量
+     */
+    public int getPendingCount() {
+        return size.get();
+    }
+
+    /**
+     * 已放入队列的操作数量
+     */
+    public long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    /**
+     * 合并后写入成功的操作数量
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * 合并后写入失败的操作数量
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * 关闭写缓冲区：停止后台线程并写入队列中剩余的操作
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM正在退出
+            }
+        }
+    }
+}
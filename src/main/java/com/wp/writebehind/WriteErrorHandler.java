@@ -0,0 +1,17 @@
+package com.wp.writebehind;
+
+import java.util.List;
+
+/**
+ * 写缓冲区批量写入失败时的回调，失败的这一批写操作已经回滚，不会重试
+ * @author 翁鹏
+ */
+@FunctionalInterface
+public interface WriteErrorHandler {
+
+    /**
+     * @param operations 失败的一批写操作（已合并），合并本身失败时为取出的所有未合并的操作
+     * @param e 异常
+     */
+    void onError(List<WriteOperation> operations, Exception e);
+}
@@ -0,0 +1,22 @@
+package com.wp.writebehind;
+
+import lombok.Data;
+
+/**
+ * 写缓冲区中的一次写操作
+ * @author 翁鹏
+ */
+@Data
+public class WriteOperation {
+
+    /**
+     * 写操作类型
+     */
+    public enum Kind {
+        SAVE, UPDATE, DELETE
+    }
+
+    private final Kind kind;
+
+    private final Object dao;
+}
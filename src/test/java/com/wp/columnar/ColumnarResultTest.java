@@ -0,0 +1,110 @@
+package com.wp.columnar;
+
+import com.wp.stub.StubJdbc;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 列式查询结果测试，使用内存结果集
+ * @author 翁鹏
+ */
+public class ColumnarResultTest {
+
+    private static final String[] LABELS = {"id", "amount", "total", "status"};
+
+    private static final int[] TYPES = {Types.INTEGER, Types.INTEGER, Types.BIGINT, Types.VARCHAR};
+
+    private static final boolean[] UNSIGNED = {false, true, true, false};
+
+    private static final BigInteger MAX_UNSIGNED_BIGINT = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+    private static final String[] STATUSES = {"new", "paid", "done"};
+
+    /**
+     * 超过初始容量，空值位图和值数组都需要扩容
+     */
+    private static final int ROWS = ColumnVector.INITIAL_CAPACITY * 2 + 1;
+
+    private static ColumnarResult read() throws SQLException {
+        Object[][] rows = new Object[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            // 每70行一个空值，第一个空值在第70行，落在位图的第二个字上
+            boolean isNull = i % 70 == 69;
+            rows[i] = new Object[]{
+                    i,
+                    isNull ? null : 4294967295L - i,
+                    isNull ? null : MAX_UNSIGNED_BIGINT,
+                    isNull ? null : STATUSES[i % STATUSES.length]
+            };
+        }
+        return ColumnarResult.read(StubJdbc.resultSet(LABELS, TYPES, UNSIGNED, rows));
+    }
+
+    @Test
+    public void testNullBitmap() throws SQLException {
+        ColumnarResult result = read();
+        assertEquals(ROWS, result.getRowCount());
+        LongColumn amount = result.longColumn("amount");
+        assertEquals(ROWS, amount.size());
+        assertFalse(amount.isNull(63));
+        assertFalse(amount.isNull(64));
+        assertFalse(amount.isNull(68));
+        assertTrue(amount.isNull(69));
+        assertFalse(amount.isNull(70));
+        for (int row = 0; row < ROWS; row++) {
+            assertEquals(row % 70 == 69, amount.isNull(row));
+        }
+        assertNull(amount.getObject(69));
+        assertEquals(ROWS / 70, amount.getNullCount());
+        assertEquals(ROWS - ROWS / 70, amount.count());
+        // id 列没有空值
+        assertEquals(0, result.intColumn("id").getNullCount());
+    }
+
+    @Test
+    public void testDictionaryCodes() throws SQLException {
+        ColumnarResult result = read();
+        StringColumn status = result.stringColumn("STATUS");
+        assertEquals(Arrays.asList(STATUSES), status.getDictionary());
+        assertEquals(0, status.getCode(0));
+        assertEquals(1, status.getCode(1));
+        assertEquals(2, status.getCode(2));
+        assertEquals(StringColumn.NULL_CODE, status.getCode(69));
+        assertNull(status.getString(69));
+        assertEquals("paid", status.getString(ROWS - 2));
+        assertEquals(StringColumn.NULL_CODE, status.codeOf("unknown"));
+        int[] counts = status.countByCode();
+        assertEquals(ROWS - status.getNullCount(), counts[0] + counts[1] + counts[2]);
+        double[] sums = status.sumByCode(result.intColumn("id"));
+        double expected = 0;
+        for (int i = 0; i < ROWS; i += STATUSES.length) {
+            if (i % 70 != 69) {
+                expected += i;
+            }
+        }
+        assertEquals(expected, sums[0], 0);
+    }
+
+    @Test
+    public void testUnsignedColumns() throws SQLException {
+        ColumnarResult result = read();
+        assertTrue(result.column("id") instanceof IntColumn);
+        // 无符号 int 使用 long 列，无符号 bigint 使用对象列
+        LongColumn amount = result.longColumn("amount");
+        assertEquals(4294967295L, amount.getLong(0));
+        assertEquals(4294967295L - 1000, amount.getLong(1000));
+        ColumnVector total = result.column("total");
+        assertTrue(total instanceof ObjectColumn);
+        assertEquals(MAX_UNSIGNED_BIGINT, total.getObject(0));
+        assertNull(total.getObject(69));
+    }
+}
@@ -0,0 +1,132 @@
+package com.wp.common;
+
+import com.wp.annotation.Cacheable;
+import com.wp.annotation.TableName;
+import com.wp.cache.EntityCache;
+import com.wp.stub.StubJdbc;
+import com.wp.utils.DbUtil;
+import lombok.Data;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 实体二级缓存与 selectById 的并发和会话测试，使用内存 JDBC 桩
+ * @author 翁鹏
+ */
+public class EntityCacheTest {
+
+    @Data
+    @Cacheable
+    @TableName("cached_user")
+    public static class CachedUser {
+        Integer id;
+        String name;
+    }
+
+    /**
+     * 数据库中 id 为1的行的 name
+     */
+    private final String[] stored = {"old"};
+
+    private final AtomicInteger queries = new AtomicInteger();
+
+    /**
+     * 查询时执行的操作，模拟在查询读到旧值之后、放入缓存之前发生的写入
+     */
+    private volatile Runnable duringQuery;
+
+    private final DbTemplate dbTemplate = new DbTemplate();
+
+    @Before
+    public void setUp() {
+        DbUtil.setDataSource(StubJdbc.dataSource(new StubJdbc.Handler() {
+            @Override
+            public ResultSet query(String sql, List<Object> params) {
+                queries.incrementAndGet();
+                String name = stored[0];
+                Runnable action = duringQuery;
+                duringQuery = null;
+                if (action != null) {
+                    action.run();
+                }
+                return StubJdbc.resultSet(new String[]{"id", "name"}, new Object[][]{{1, name}});
+            }
+
+            @Override
+            public int update(String sql, List<Object> params) {
+                for (Object param : params) {
+                    if (param instanceof String) {
+                        stored[0] = (String) param;
+                    }
+                }
+                return 1;
+            }
+        }));
+        AnnotationParser.getEntityPlan(CachedUser.class).getEntityCache().clear();
+    }
+
+    @Test
+    public void testPutDroppedAfterInvalidate() {
+        EntityCache cache = new EntityCache(16, 0);
+        long version = cache.version(1L);
+        cache.invalidate(1);
+        assertFalse(cache.put(1, new Object[]{1, "old"}, version));
+        assertNull(cache.get(1L));
+        assertTrue(cache.put(1, new Object[]{1, "new"}, cache.version(1)));
+        assertEquals("new", cache.get(1L)[1]);
+    }
+
+    @Test
+    public void testConcurrentUpdateDuringRead() throws Exception {
+        duringQuery = () -> {
+            // 另一个线程在查询读到旧值后更新并提交
+            Thread writer = new Thread(() -> {
+                CachedUser user = new CachedUser();
+                user.setId(1);
+                user.setName("new");
+                try {
+                    dbTemplate.update(user);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            writer.start();
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        assertEquals("old", dbTemplate.selectById(CachedUser.class, 1).getName());
+        // 旧值没有放入缓存，再次查询访问数据库并读到新值
+        assertEquals("new", dbTemplate.selectById(CachedUser.class, 1).getName());
+        assertEquals(2, queries.get());
+        // 新值已放入缓存
+        assertEquals("new", dbTemplate.selectById(CachedUser.class, 1).getName());
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void testSessionBypassesCache() throws Exception {
+        dbTemplate.selectById(CachedUser.class, 1);
+        assertEquals(1, queries.get());
+        try (DbSession session = DbSession.begin()) {
+            // 会话中不读缓存也不写缓存
+            dbTemplate.selectById(CachedUser.class, 1);
+            dbTemplate.selectById(CachedUser.class, 1);
+            assertEquals(3, queries.get());
+            session.commit();
+        }
+        dbTemplate.selectById(CachedUser.class, 1);
+        assertEquals(3, queries.get());
+    }
+}
@@ -0,0 +1,239 @@
+package com.wp.stub;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 测试用的内存 JDBC 桩，不需要真实的数据库
+ * 语句由 Handler 处理：查询返回 resultSet 构造的结果集，更新返回受影响的行数
+ * @author 翁鹏
+ */
+public final class StubJdbc {
+
+    private StubJdbc() {
+    }
+
+    /**
+     * 处理数据源上执行的语句
+     */
+    public interface Handler {
+
+        ResultSet query(String sql, List<Object> params) throws SQLException;
+
+        default int update(String sql, List<Object> params) throws SQLException {
+            return 1;
+        }
+    }
+
+    /**
+     * 创建数据源，数据库产品名为 H2，连接的提交、回滚和关闭不做任何事
+     */
+    public static DataSource dataSource(Handler handler) {
+        Connection connection = proxy(Connection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return statement((String) args[0], handler);
+                case "getMetaData":
+                    return proxy(DatabaseMetaData.class, (p, m, a) -> {
+                        switch (m.getName()) {
+                            case "getDatabaseProductName":
+                                return "H2";
+                            case "getURL":
+                                return "jdbc:h2:mem:stub";
+                            default:
+                                return defaultValue(m);
+                        }
+                    });
+                default:
+                    return defaultValue(method);
+            }
+        });
+        return proxy(DataSource.class, (proxy, method, args) ->
+                "getConnection".equals(method.getName()) ? connection : defaultValue(method));
+    }
+
+    private static PreparedStatement statement(String sql, Handler handler) {
+        List<Object> params = new ArrayList<>();
+        List<List<Object>> batches = new ArrayList<>();
+        return proxy(PreparedStatement.class, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.equals("setNull")) {
+                set(params, (Integer) args[0], null);
+                return null;
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                set(params, (Integer) args[0], args[1]);
+                return null;
+            }
+            switch (name) {
+                case "executeQuery":
+                    return handler.query(sql, new ArrayList<>(params));
+                case "executeUpdate":
+                    return handler.update(sql, new ArrayList<>(params));
+                case "addBatch":
+                    batches.add(new ArrayList<>(params));
+                    params.clear();
+                    return null;
+                case "executeBatch":
+                    int[] counts = new int[batches.size()];
+                    for (int i = 0; i < counts.length; i++) {
+                        counts[i] = handler.update(sql, batches.get(i));
+                    }
+                    batches.clear();
+                    return counts;
+                case "getGeneratedKeys":
+                    return resultSet(new String[]{"id"}, new Object[0][]);
+                default:
+                    return defaultValue(method);
+            }
+        });
+    }
+
+    private static void set(List<Object> params, int index, Object value) {
+        while (params.size() < index) {
+            params.add(null);
+        }
+        params.set(index - 1, value);
+    }
+
+    /**
+     * 创建列类型都为 OTHER 的结果集
+     */
+    public static ResultSet resultSet(String[] labels, Object[][] rows) {
+        int[] types = new int[labels.length];
+        Arrays.fill(types, Types.OTHER);
+        return resultSet(labels, types, null, rows);
+    }
+
+    /**
+     * 创建结果集
+     * @param types 每列的 JDBC 类型
+     * @param unsigned 每列是否是无符号数，为null时都是有符号数
+     */
+    public static ResultSet resultSet(String[] labels, int[] types, boolean[] unsigned, Object[][] rows) {
+        ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (proxy, method, args) -> {
+            int column = args == null ? 0 : (Integer) args[0] - 1;
+            switch (method.getName()) {
+                case "getColumnCount":
+                    return labels.length;
+                case "getColumnLabel":
+                case "getColumnName":
+                    return labels[column];
+                case "getColumnType":
+                    return types[column];
+                case "isSigned":
+                    return unsigned == null || !unsigned[column];
+                default:
+                    return defaultValue(method);
+            }
+        });
+        int[] row = {-1};
+        boolean[] wasNull = {false};
+        return proxy(ResultSet.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getMetaData":
+                    return metaData;
+                case "next":
+                    return ++row[0] < rows.length;
+                case "wasNull":
+                    return wasNull[0];
+                default:
+                    if (method.getName().startsWith("get") && args != null && args.length == 1 && args[0] instanceof Integer) {
+                        Object value = rows[row[0]][(Integer) args[0] - 1];
+                        wasNull[0] = value == null;
+                        return convert(value, method);
+                    }
+                    return defaultValue(method);
+            }
+        });
+    }
+
+    private static Object convert(Object value, Method method) {
+        Class<?> type = method.getReturnType();
+        if (value == null) {
+            return defaultValue(method);
+        }
+        if (value instanceof Number) {
+            Number number = (Number) value;
+            if (type == int.class) {
+                return number.intValue();
+            }
+            if (type == long.class) {
+                return number.longValue();
+            }
+            if (type == double.class) {
+                return number.doubleValue();
+            }
+            if (type == float.class) {
+                return number.floatValue();
+            }
+            if (type == short.class) {
+                return number.shortValue();
+            }
+            if (type == byte.class) {
+                return number.byteValue();
+            }
+        }
+        if (type == String.class) {
+            return value.toString();
+        }
+        return value;
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        if (type == float.class) {
+            return 0.0f;
+        }
+        return null;
+    }
+
+    /**
+     * 创建代理，equals 和 hashCode 按对象标识比较，使连接和数据源可以作为 Map 的键
+     */
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(StubJdbc.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return args.length == 1 && proxy == args[0];
+                        case "hashCode":
+                            return args == null ? System.identityHashCode(proxy) : handler.invoke(proxy, method, args);
+                        case "toString":
+                            return args == null ? "Stub" + type.getSimpleName() : handler.invoke(proxy, method, args);
+                        default:
+                            return handler.invoke(proxy, method, args);
+                    }
+                }));
+    }
+}
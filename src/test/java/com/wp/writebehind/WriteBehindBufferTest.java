@@ -0,0 +1,182 @@
+package com.wp.writebehind;
+
+import com.wp.annotation.TableName;
+import com.wp.common.DbTemplate;
+import com.wp.stub.StubJdbc;
+import com.wp.utils.DbUtil;
+import lombok.Data;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 异步写缓冲区测试，使用内存 JDBC 桩记录执行的语句
+ * @author 翁鹏
+ */
+public class WriteBehindBufferTest {
+
+    @Data
+    @TableName("buffered_user")
+    public static class BufferedUser {
+        Integer id;
+        String name;
+        Integer age;
+    }
+
+    /**
+     * 执行的写语句和参数
+     */
+    private final List<String> statements = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * 写语句执行前等待的门闩，为null时不等待
+     */
+    private volatile CountDownLatch gate;
+
+    /**
+     * 写语句开始执行时计数
+     */
+    private volatile CountDownLatch writing = new CountDownLatch(1);
+
+    private WriteBehindBuffer buffer;
+
+    @Before
+    public void setUp() {
+        DbUtil.setDataSource(StubJdbc.dataSource(new StubJdbc.Handler() {
+            @Override
+            public ResultSet query(String sql, List<Object> params) {
+                return StubJdbc.resultSet(new String[0], new Object[0][]);
+            }
+
+            @Override
+            public int update(String sql, List<Object> params) {
+                writing.countDown();
+                CountDownLatch current = gate;
+                if (current != null) {
+                    try {
+                        current.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                statements.add(sql + " " + params);
+                return 1;
+            }
+        }));
+    }
+
+    @After
+    public void tearDown() {
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    private static BufferedUser user(int id, String name, Integer age) {
+        BufferedUser user = new BufferedUser();
+        user.setId(id);
+        user.setName(name);
+        user.setAge(age);
+        return user;
+    }
+
+    @Test
+    public void testCoalesce() {
+        buffer = new WriteBehindBuffer(new DbTemplate(), 100, 100, 60000);
+        buffer.save(user(1, "a", null));
+        // 不同的对象按字段合并，后一个对象的非空字段优先
+        buffer.update(user(1, null, 20));
+        buffer.update(user(1, "b", null));
+        // save 后 delete 互相抵消
+        buffer.save(user(2, "c", 30));
+        buffer.delete(user(2, null, null));
+        buffer.flush();
+        assertEquals(Collections.singletonList("insert into buffered_user(id,name,age) values(?,?,?) [1, b, 20]"), statements);
+        assertEquals(5, buffer.getEnqueuedCount());
+        assertEquals(1, buffer.getWrittenCount());
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testDeleteThenSaveWrittenInOrder() {
+        buffer = new WriteBehindBuffer(new DbTemplate(), 100, 100, 60000);
+        buffer.delete(user(1, null, null));
+        buffer.save(user(1, "a", null));
+        buffer.flush();
+        assertEquals(Arrays.asList("delete from buffered_user where id = ? [1]",
+                "insert into buffered_user(id,name) values(?,?) [1, a]"), statements);
+        assertEquals(2, buffer.getWrittenCount());
+    }
+
+    @Test
+    public void testCoalesceFailureReportsAllOperations() {
+        buffer = new WriteBehindBuffer(new DbTemplate(), 100, 100, 60000);
+        List<WriteOperation> failed = new ArrayList<>();
+        buffer.setErrorHandler((operations, e) -> failed.addAll(operations));
+        buffer.save(user(1, "a", null));
+        // 没有对象的操作在合并时读取主键失败
+        assertTrue(buffer.offer(new WriteOperation(WriteOperation.Kind.SAVE, null)));
+        buffer.flush();
+        assertEquals(2, failed.size());
+        assertEquals(2, buffer.getFailedCount());
+        assertEquals(0, buffer.getPendingCount());
+        assertTrue(statements.isEmpty());
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        gate = new CountDownLatch(1);
+        buffer = new WriteBehindBuffer(new DbTemplate(), 2, 2, 60000);
+        buffer.setMaxBlockMillis(50);
+        // 达到 flushSize，后台线程取出这两条后阻塞在写入中
+        buffer.save(user(1, "a", null));
+        buffer.save(user(2, "b", null));
+        assertTrue(writing.await(10, TimeUnit.SECONDS));
+        buffer.save(user(3, "c", null));
+        buffer.save(user(4, "d", null));
+        assertEquals(2, buffer.getPendingCount());
+        assertFalse(buffer.offer(new WriteOperation(WriteOperation.Kind.SAVE, user(5, "e", null))));
+        try {
+            buffer.save(user(5, "e", null));
+            fail("队列已满时应在等待 maxBlockMillis 后抛出异常");
+        } catch (IllegalStateException e) {
+            // 预期
+        }
+        gate.countDown();
+        buffer.close();
+        assertEquals(4, buffer.getWrittenCount());
+        assertEquals(4, statements.size());
+    }
+
+    @Test
+    public void testCloseFlushesAndRejectsOffer() {
+        buffer = new WriteBehindBuffer(new DbTemplate(), 100, 100, 60000);
+        buffer.save(user(1, "a", null));
+        buffer.update(user(2, "b", null));
+        buffer.close();
+        assertEquals(2, statements.size());
+        assertEquals(0, buffer.getPendingCount());
+        try {
+            buffer.offer(new WriteOperation(WriteOperation.Kind.SAVE, user(3, "c", null)));
+            fail("关闭后不能再放入写操作");
+        } catch (IllegalStateException e) {
+            // 预期
+        }
+        // 重复关闭没有影响
+        buffer.close();
+        assertEquals(2, statements.size());
+    }
+}
@@ -1,8 +1,12 @@
 import com.wp.common.DbTemplate;
+import com.wp.common.KeysetPager;
+import com.wp.common.UpdateResult;
 import dao.User;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Test;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 @Slf4j
 public class test {
 
@@ -24,6 +28,46 @@ public class test {
 
     }
 
+    @Test
+    public void testSaveAll() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            User user = new User();
+            user.setId(1000 + i);
+            user.setName("batch" + i);
+            user.setPassword("12345");
+            user.setIsDelete(0);
+            users.add(user);
+        }
+        DbTemplate dbTemplate = new DbTemplate();
+        dbTemplate.setBatchSize(200);
+        try {
+            int[] rows = dbTemplate.saveAll(users);
+            log.info("保存 " + rows.length + " 条");
+            rows = dbTemplate.deleteAll(users);
+            log.info("删除 " + rows.length + " 条");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void testInTransaction() {
+        DbTemplate dbTemplate = new DbTemplate();
+        try {
+            dbTemplate.inTransaction(template -> {
+                User user = new User();
+                user.setId(333);
+                user.setName("事务");
+                template.save(user);
+                user.setName("事务更新");
+                return template.update(user);
+            });
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     @Test
     public void testUpdate() {
         User user = new User();
@@ -37,6 +81,21 @@ public class test {
         }
     }
 
+    @Test
+    public void testDirtyUpdate() {
+        DbTemplate dbTemplate = new DbTemplate();
+        try {
+            User user = dbTemplate.selectById(User.class, 222);
+            user.setName("只更新name");
+            UpdateResult result = dbTemplate.updateWithResult(user);
+            log.info("写入字段：" + result.getWrittenColumns());
+            // 没有变化，不访问数据库
+            log.info("跳过：" + dbTemplate.updateWithResult(user).isSkipped());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     @Test
     public void testDelete() {
         User user = new User();
@@ -64,6 +123,41 @@ public class test {
         }
     }
 
+    @Test
+    public void testStream() {
+        DbTemplate dbTemplate = new DbTemplate();
+        try (Stream<User> users = dbTemplate.stream(User.class)) {
+            users.forEach(user -> log.info(user.toString()));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void testPages() {
+        DbTemplate dbTemplate = new DbTemplate();
+        try {
+            KeysetPager<User> pages = dbTemplate.pages(User.class, 100);
+            while (pages.hasNext()) {
+                List<User> page = pages.next();
+                log.info("读取{}条，最后的主键为{}", page.size(), pages.getLastKey());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void testSelectAllParallel() {
+        DbTemplate dbTemplate = new DbTemplate();
+        try {
+            List<User> users = dbTemplate.selectAllParallel(User.class, 8);
+            log.info("并行扫描读取{}条", users.size());
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
     @Test
     public void testSelectById() {
         User user = new User();